@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.SDK_VERSION;
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Persistent index of launcher activities with their labels, sorted by
+ * label. Built once, then patched for single packages when they are added,
+ * changed or removed, so opening the activity picker does not need to load
+ * labels of all installed activities.
+ */
+public class ActivityIndex {
+
+	public static final String FILE_NAME = "activities.idx";
+
+	private static final int VERSION = 1;
+
+	// Intent.setPackage(String), API level 4
+	private static Method sSetPackage;
+	static {
+		if (SDK_VERSION >= 4) {
+			try {
+				sSetPackage = Intent.class.getMethod("setPackage", String.class);
+			} catch (NoSuchMethodException e) {
+				Log.e(TAG, "cannot find setPackage", e);
+			}
+		}
+	}
+
+	public static class Entry implements Comparable<Entry> {
+		public final String packageName;
+		public final String className;
+		public final String label;
+		public final String sortKey;
+
+		Entry(String packageName, String className, String label, String sortKey) {
+			this.packageName = packageName;
+			this.className = className;
+			this.label = label;
+			this.sortKey = sortKey;
+		}
+
+		Entry(ActivityInfo info, PackageManager pm) {
+			packageName = info.packageName;
+			className = info.name;
+			label = info.loadLabel(pm).toString();
+			sortKey = label.toLowerCase();
+		}
+
+		public int compareTo(Entry another) {
+			return sortKey.compareTo(another.sortKey);
+		}
+	}
+
+	private ActivityIndex() {
+	}
+
+	/**
+	 * Returns launcher activities sorted by label. The index is built if it
+	 * does not exist yet or was built for another locale.
+	 */
+	public static synchronized List<Entry> load(Context context) {
+		File file = new File(context.getFilesDir(), FILE_NAME);
+		ArrayList<Entry> entries = read(file);
+		if (entries == null) {
+			long start = SystemClock.uptimeMillis();
+			entries = query(context.getPackageManager(), null);
+			Collections.sort(entries);
+			write(file, entries);
+			Log.d(TAG, "activity index built in " + (SystemClock.uptimeMillis() - start) + " ms");
+		}
+		return entries;
+	}
+
+	/**
+	 * Re-reads activities of given package into the index. Does nothing if
+	 * the index has not been built yet. Queries the package manager, should
+	 * not be called from the main thread.
+	 */
+	public static synchronized void update(Context context, String packageName, boolean removed) {
+		File file = new File(context.getFilesDir(), FILE_NAME);
+		ArrayList<Entry> entries = read(file);
+		if (entries == null) {
+			return;
+		}
+
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			if (entries.get(i).packageName.equals(packageName)) {
+				entries.remove(i);
+			}
+		}
+		if (!removed) {
+			entries.addAll(query(context.getPackageManager(), packageName));
+			Collections.sort(entries);
+		}
+		write(file, entries);
+		Log.d(TAG, "activity index updated for " + packageName);
+	}
+
+	private static ArrayList<Entry> query(PackageManager pm, String packageName) {
+		Intent queryIntent = new Intent(Intent.ACTION_MAIN);
+		queryIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+		if (packageName != null && sSetPackage != null) {
+			// resolve activities of that package only
+			try {
+				sSetPackage.invoke(queryIntent, packageName);
+			} catch (Exception e) {
+				Log.e(TAG, "cannot restrict query to " + packageName, e);
+			}
+		}
+		List<ResolveInfo> list = pm.queryIntentActivities(queryIntent, 0);
+
+		ArrayList<Entry> entries = new ArrayList<Entry>(packageName == null ? list.size() : 4);
+		for (ResolveInfo item : list) {
+			ActivityInfo info = item.activityInfo;
+			// the query returns all packages before 1.6
+			if (packageName == null || packageName.equals(info.packageName)) {
+				entries.add(new Entry(info, pm));
+			}
+		}
+		return entries;
+	}
+
+	private static ArrayList<Entry> read(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+			if (in.readInt() != VERSION || !Locale.getDefault().toString().equals(in.readUTF())) {
+				return null; // labels are localized
+			}
+			int size = in.readInt();
+			ArrayList<Entry> entries = new ArrayList<Entry>(size + 4);
+			for (int i = 0; i < size; i++) {
+				entries.add(new Entry(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()));
+			}
+			return entries;
+		} catch (IOException e) {
+			Log.e(TAG, "cannot read activity index", e);
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	private static void write(File file, ArrayList<Entry> entries) {
+		// write into a temporary file first, readers never see a partial index
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 8192));
+			out.writeInt(VERSION);
+			out.writeUTF(Locale.getDefault().toString());
+			out.writeInt(entries.size());
+			for (Entry entry : entries) {
+				out.writeUTF(entry.packageName);
+				out.writeUTF(entry.className);
+				out.writeUTF(entry.label);
+				out.writeUTF(entry.sortKey);
+			}
+			out.close();
+			out = null;
+			if (!tmp.renameTo(file)) {
+				Log.e(TAG, "cannot replace activity index");
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "cannot write activity index", e);
+		} finally {
+			close(out);
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+public class BatteryHistoryActivity extends Activity {
+
+	private HistoryChartView mChart;
+
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.history);
+		mChart = (HistoryChartView) findViewById(R.id.chart);
+	}
+
+	protected void onResume() {
+		super.onResume();
+		mChart.requestRender();
+	}
+
+	protected void onDestroy() {
+		super.onDestroy();
+		mChart.release();
+	}
+}
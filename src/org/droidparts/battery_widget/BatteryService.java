@@ -19,13 +19,20 @@ package org.droidparts.battery_widget;
 import static org.droidparts.battery_widget.BatteryWidget.TAG;
 import static org.droidparts.battery_widget.BatteryWidgetProvider.EXT_UPDATE_WIDGETS;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.app.Service;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -34,68 +41,117 @@ import android.util.Log;
 
 public class BatteryService extends Service {
 
-	// cached values
-	int mBatteryChargeLevel = -1; 
-	boolean mChargerConnected;
+	private static final String EXT_TRACE = "trace";
+	private static final String EXT_SYSFS = "sysfs";
+
+	// latest battery state, see BatteryState
+	private final AtomicLong mState = new AtomicLong(BatteryState.INITIAL);
 
 	private ScreenStateService mScreenStateReceiver;
+	private UpdateFilter mUpdateFilter;
+	private HistoryLog mHistoryLog;
+	private RollupIndex mRollupIndex;
+	private ChargingSessions mChargingSessions;
+	private final RemainingTimeEstimator mEstimator = new RemainingTimeEstimator();
+	private final ServiceMetrics mMetrics = new ServiceMetrics();
+	private TraceRecorder mTraceRecorder;
+	private BatterySource mBatterySource = new BroadcastBatterySource();
+	private SharedBatteryState mSharedState;
 
 
-	private class BatteryStateReceiver extends BroadcastReceiver {
-		@Override
-		public void onReceive(Context context, Intent intent) {
-			String action = intent.getAction();
+	private class BatteryStateListener implements BatterySource.Listener {
+		public void onBatteryChanged(BatterySource source) {
+			mMetrics.broadcasts.incrementAndGet();
 
-			if (Intent.ACTION_BATTERY_CHANGED.equals(action)) {
-				
-				// see constants in BatteryManager
-				
-				int rawlevel = intent.getIntExtra("level", -1);
-				int scale = intent.getIntExtra("scale", -1);
-				int level = 0;
-				if (rawlevel >= 0 && scale > 0) {
-					level = (rawlevel * 100) / scale;
-				}
-				mBatteryChargeLevel = level;
-				mChargerConnected = intent.getIntExtra("plugged", 0) > 0 && level < 100 /* not charging if 100%*/;
-				
-				Log.d(TAG, "battery state: level=" + level + ", charging=" + mChargerConnected);
+			int level = source.getLevel();
+			int plugged = source.getPlugged();
+			boolean charging = source.isCharging();
+
+			long now = source.getTime();
+			if (mTraceRecorder != null) {
+				mTraceRecorder.recordBattery(now, level, 100, plugged, source.getStatus(), source.getHealth(),
+						source.getTemperature(), source.getVoltage());
 			}
-			
-			BatteryWidget.updateWidgets(context, mBatteryChargeLevel, mChargerConnected);
+
+			mEstimator.addSample(now, level, charging);
+			long state = BatteryState.publish(mState, level, charging, mEstimator.getRemainingMinutes());
+			if (mSharedState != null) {
+				mSharedState.publish(now, level, charging, BatteryState.getRemainingMinutes(state));
+			}
+
+			long logTime = now;
+			if (mHistoryLog != null) {
+				logTime = mHistoryLog.append(now, level, source.getStatus(), source.getHealth(), plugged,
+						source.getTemperature(), source.getVoltage(), source.getTechnology());
+			}
+			if (mRollupIndex != null) {
+				// same time as in the log the rollups get rebuilt from
+				mRollupIndex.add(logTime, level, charging);
+			}
+			if (mChargingSessions != null) {
+				mChargingSessions.add(now, level, plugged, source.getStatus());
+			}
+
+			Log.d(TAG, "battery state: " + BatteryState.toString(state)
+					+ (source.getCurrent() == BatterySource.UNKNOWN_CURRENT ? "" : ", current=" + source.getCurrent()));
+
+			mUpdateFilter.submit(state);
 		}
 	}
 
 	private class ScreenStateService extends BroadcastReceiver {
-		private BatteryStateReceiver mBatteryStateReceiver;
+		private BatteryStateListener mBatteryStateListener;
 
 		@Override
 		public void onReceive(Context context, Intent intent) {
 			String action = intent.getAction();
+			if (mTraceRecorder != null) {
+				mTraceRecorder.record(System.currentTimeMillis(), intent);
+			}
 			if (Intent.ACTION_SCREEN_ON.equals(action)) {
 				Log.d(TAG, "screen is ON");
+				// the launcher might have been restarted meanwhile
+				BatteryWidget.requestFullUpdate();
 				registerBatteryReceiver(true, context);
 			} else if (Intent.ACTION_SCREEN_OFF.equals(action)) {
 				registerBatteryReceiver(false, context);
+				if (mHistoryLog != null) {
+					mHistoryLog.flush();
+				}
+				if (mRollupIndex != null) {
+					mRollupIndex.flush();
+				}
+				if (mChargingSessions != null) {
+					mChargingSessions.flush();
+				}
+				if (mTraceRecorder != null) {
+					mTraceRecorder.flush();
+				}
+				saveMetrics();
 				Log.d(TAG, "screen is OFF");
 			}
 		}
 
 		public void registerBatteryReceiver(boolean register, Context context) {
 			if (register) {
-				if (mBatteryStateReceiver == null) {
-					mBatteryStateReceiver = new BatteryStateReceiver();
-			        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-					context.registerReceiver(mBatteryStateReceiver, filter);
+				if (mBatteryStateListener == null) {
+					mBatteryStateListener = new BatteryStateListener();
+					mBatterySource.start(context, mBatteryStateListener);
+					mMetrics.onReceiverRegistered();
 				}
-			} else if (mBatteryStateReceiver != null) {
-				context.unregisterReceiver(mBatteryStateReceiver);
-				mBatteryStateReceiver = null;
+			} else if (mBatteryStateListener != null) {
+				mBatterySource.stop(context);
+				mBatteryStateListener = null;
+				mMetrics.onReceiverUnregistered();
 			}
 
 			Log.d(TAG, "battery receiver " + (register ? "ON" : "OFF (sleeping)"));
 		}
 
+		public boolean isBatteryReceiverRegistered() {
+			return mBatteryStateListener != null;
+		}
+
 		public void registerScreenReceiver(boolean register, Context context) {
 			if (register) {
 				IntentFilter filter = new IntentFilter();
@@ -112,7 +168,16 @@ public class BatteryService extends Service {
 	public void onStart(Intent intent, int startId) {
 
 		if (mScreenStateReceiver == null) {
+			mUpdateFilter = new UpdateFilter(this, UpdateFilter.DEFAULT_MERGE_WINDOW, mMetrics);
+			mHistoryLog = HistoryLog.getInstance(this);
+			mRollupIndex = RollupIndex.getInstance(this);
+			mChargingSessions = ChargingSessions.getInstance(this);
 			mScreenStateReceiver = new ScreenStateService();
+			try {
+				mSharedState = SharedBatteryState.openWriter(new File(getFilesDir(), SharedBatteryState.FILE_NAME));
+			} catch (IOException e) {
+				Log.e(TAG, "cannot share battery state", e);
+			}
 
 			if (isScreenOn(this)) {
 				mScreenStateReceiver.registerBatteryReceiver(true, this);
@@ -124,7 +189,16 @@ public class BatteryService extends Service {
 
 		Bundle ext = intent.getExtras();
 		if (ext != null && ext.getBoolean(EXT_UPDATE_WIDGETS, false)) {
-			BatteryWidget.updateWidgets(this, mBatteryChargeLevel, mChargerConnected);
+			BatteryWidget.requestFullUpdate();
+			mUpdateFilter.forceUpdate(mState.get());
+		}
+		if (ext != null && ext.containsKey(EXT_TRACE) && isDebuggable()) {
+			setTracing(ext.getBoolean(EXT_TRACE));
+		}
+		if (ext != null && ext.containsKey(EXT_SYSFS) && isDebuggable()) {
+			int interval = ext.getInt(EXT_SYSFS);
+			setBatterySource(interval > 0 ? new SysfsBatterySource(SysfsBatterySource.DEFAULT_ROOT, interval)
+					: new BroadcastBatterySource());
 		}
 
 	}
@@ -135,21 +209,127 @@ public class BatteryService extends Service {
 			mScreenStateReceiver.registerScreenReceiver(false, this);
 			mScreenStateReceiver = null;
 		}
+		if (mUpdateFilter != null) {
+			mUpdateFilter.cancel();
+			mUpdateFilter = null;
+		}
+		if (mHistoryLog != null) {
+			mHistoryLog.flush();
+			mHistoryLog = null;
+		}
+		if (mRollupIndex != null) {
+			mRollupIndex.flush();
+			mRollupIndex = null;
+		}
+		if (mChargingSessions != null) {
+			mChargingSessions.flush();
+			mChargingSessions = null;
+		}
+		if (mSharedState != null) {
+			mSharedState.close();
+			mSharedState = null;
+		}
+		setTracing(false);
+		saveMetrics();
 
 		Log.d(TAG, "stopped");
 	}
 
+	/**
+	 * Prints service metrics, use
+	 * <code>adb shell dumpsys activity service org.droidparts.battery_widget</code>
+	 */
+	@Override
+	protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+		writer.println(BatteryState.toString(mState.get()));
+		mMetrics.dump(writer);
+		if (mChargingSessions != null) {
+			mChargingSessions.dump(writer);
+		}
+	}
+
+	/**
+	 * Starts or stops appending received broadcasts to the trace file, use
+	 * <code>adb shell am startservice -n org.droidparts.battery_widget/.BatteryService --ez trace true</code>
+	 * on a debug build.
+	 */
+	private void setTracing(boolean enabled) {
+		if (enabled && mTraceRecorder == null) {
+			mTraceRecorder = new TraceRecorder(getFileStreamPath(TraceRecorder.FILE_NAME));
+			Log.d(TAG, "tracing started");
+		} else if (!enabled && mTraceRecorder != null) {
+			mTraceRecorder.close();
+			mTraceRecorder = null;
+			Log.d(TAG, "tracing stopped");
+		}
+	}
+
+	/**
+	 * Switches the battery source, use
+	 * <code>adb shell am startservice -n org.droidparts.battery_widget/.BatteryService --ei sysfs 5000</code>
+	 * on a debug build to poll sysfs every 5 seconds, at most once a second,
+	 * and <code>--ei sysfs 0</code> to get back to the battery broadcast. The
+	 * service must have been started.
+	 */
+	void setBatterySource(BatterySource source) {
+		boolean active = mScreenStateReceiver.isBatteryReceiverRegistered();
+		if (active) {
+			mScreenStateReceiver.registerBatteryReceiver(false, this);
+		}
+		mBatterySource = source;
+		if (active) {
+			mScreenStateReceiver.registerBatteryReceiver(true, this);
+		}
+		Log.d(TAG, "battery source: " + source.getClass().getSimpleName());
+	}
+
+	/**
+	 * Returns whether this is a debug build. The service is exported, so
+	 * extras for developers are ignored in release builds.
+	 */
+	private boolean isDebuggable() {
+		try {
+			// Context.getApplicationInfo() is not available before 1.6
+			ApplicationInfo info = getPackageManager().getApplicationInfo(getPackageName(), 0);
+			return (info.flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+		} catch (PackageManager.NameNotFoundException e) {
+			return false;
+		}
+	}
+
+	private void saveMetrics() {
+		mMetrics.save(new File(getFilesDir(), ServiceMetrics.FILE_NAME));
+	}
+
 	@Override
 	public IBinder onBind(Intent intent) {
 		return null;
 	}
 
 	public static void requestWidgetUpdate(Context context) {
+		if (ServicelessUpdater.isEnabled(context)) {
+			ServicelessUpdater.update(context);
+			return;
+		}
 		Intent serviceIntent = new Intent(context, BatteryService.class);
 		serviceIntent.putExtra(EXT_UPDATE_WIDGETS, true);
 		context.startService(serviceIntent);
 	}
 
+	static int getChargeLevel(Intent intent) {
+		int rawlevel = intent.getIntExtra("level", -1);
+		int scale = intent.getIntExtra("scale", -1);
+		int level = 0;
+		if (rawlevel >= 0 && scale > 0) {
+			level = (rawlevel * 100) / scale;
+		}
+		return level;
+	}
+
+	static boolean isChargerConnected(Intent intent, int level) {
+		return intent.getIntExtra("plugged", 0) > 0 && level < 100 /* not charging if 100%*/;
+	}
+
 	private static boolean isScreenOn(Context context) {
 		PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
 		int sdkVersion = Integer.parseInt(Build.VERSION.SDK);
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import android.content.Context;
+
+/**
+ * Source of battery state consumed by {@link BatteryService}. The latest
+ * state is kept in the fields of the source, the listener gets called on
+ * the main thread whenever a new state has been read. Values follow the
+ * extras of the battery broadcast; see constants in BatteryManager.
+ */
+public abstract class BatterySource {
+
+	public static final int UNKNOWN_CURRENT = Integer.MIN_VALUE;
+
+	// BatteryManager constants, not available on all supported versions
+	public static final int STATUS_UNKNOWN = 1;
+	public static final int STATUS_CHARGING = 2;
+	public static final int STATUS_DISCHARGING = 3;
+	public static final int STATUS_NOT_CHARGING = 4;
+	public static final int STATUS_FULL = 5;
+
+	public static final int PLUGGED_AC = 1;
+	public static final int PLUGGED_USB = 2;
+
+	public interface Listener {
+		void onBatteryChanged(BatterySource source);
+	}
+
+	protected Listener mListener;
+
+	protected long mTime; // wall clock time the state was read at
+	protected int mLevel = -1; // percent
+	protected int mPlugged;
+	protected int mStatus = STATUS_UNKNOWN;
+	protected int mHealth;
+	protected int mTemperature; // tenths of a degree Celsius
+	protected int mVoltage; // mV
+	protected int mCurrent = UNKNOWN_CURRENT; // uA, negative when discharging on most devices
+	protected String mTechnology;
+
+	/**
+	 * Starts delivering battery state to given listener.
+	 */
+	public abstract void start(Context context, Listener listener);
+
+	public abstract void stop(Context context);
+
+	public long getTime() {
+		return mTime;
+	}
+
+	public int getLevel() {
+		return mLevel;
+	}
+
+	public int getPlugged() {
+		return mPlugged;
+	}
+
+	public boolean isCharging() {
+		return mPlugged > 0 && mLevel < 100 /* not charging if 100% */;
+	}
+
+	public int getStatus() {
+		return mStatus;
+	}
+
+	public int getHealth() {
+		return mHealth;
+	}
+
+	public int getTemperature() {
+		return mTemperature;
+	}
+
+	public int getVoltage() {
+		return mVoltage;
+	}
+
+	public int getCurrent() {
+		return mCurrent;
+	}
+
+	public String getTechnology() {
+		return mTechnology;
+	}
+}
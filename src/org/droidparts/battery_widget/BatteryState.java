@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Battery state packed into a single long, so that it can be published
+ * through an {@link AtomicLong} and read by any thread without locking and
+ * without seeing a level of one update with a charging flag of another.
+ * The version grows whenever the state changes, comparing versions tells
+ * whether anything changed since the last look.
+ */
+public final class BatteryState {
+
+	// 32 bits version, 8 bits level, 1 bit charging, 23 bits remaining minutes
+	private static final int LEVEL_SHIFT = 24;
+	private static final int CHARGING_BIT = 1 << 23;
+	private static final int REMAINING_MASK = CHARGING_BIT - 1;
+
+	/** State before the first battery update. */
+	public static final long INITIAL = pack(0, -1, false, RemainingTimeEstimator.UNKNOWN);
+
+	private BatteryState() {
+	}
+
+	public static long pack(int version, int level, boolean charging, int remainingMinutes) {
+		int data = ((level & 0xff) << LEVEL_SHIFT) | (charging ? CHARGING_BIT : 0)
+				| (Math.min(remainingMinutes + 1, REMAINING_MASK) & REMAINING_MASK);
+		return ((long) version << 32) | (data & 0xffffffffL);
+	}
+
+	public static int getVersion(long state) {
+		return (int) (state >>> 32);
+	}
+
+	/**
+	 * Returns charge level in percent, -1 if not known yet.
+	 */
+	public static int getLevel(long state) {
+		return (byte) (state >>> LEVEL_SHIFT);
+	}
+
+	public static boolean isCharging(long state) {
+		return (state & CHARGING_BIT) != 0;
+	}
+
+	/**
+	 * Returns remaining minutes or {@link RemainingTimeEstimator#UNKNOWN}.
+	 */
+	public static int getRemainingMinutes(long state) {
+		return ((int) state & REMAINING_MASK) - 1;
+	}
+
+	/**
+	 * Publishes given values into given reference. The version is only
+	 * increased if the values differ from the current ones. Returns the
+	 * published state.
+	 */
+	public static long publish(AtomicLong ref, int level, boolean charging, int remainingMinutes) {
+		while (true) {
+			long current = ref.get();
+			int version = getVersion(current);
+			long next = pack(version, level, charging, remainingMinutes);
+			if (next == current) {
+				return current; // nothing changed
+			}
+			next = pack(version + 1, level, charging, remainingMinutes);
+			if (ref.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+
+	public static String toString(long state) {
+		return "level=" + getLevel(state) + ", charging=" + isCharging(state) + ", remaining="
+				+ getRemainingMinutes(state) + " min, version=" + getVersion(state);
+	}
+}
@@ -16,13 +16,16 @@
 
 package org.droidparts.battery_widget;
 
-import static android.content.Context.MODE_PRIVATE;
-import android.app.PendingIntent;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import android.appwidget.AppWidgetManager;
-import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
 import android.widget.RemoteViews;
@@ -32,36 +35,232 @@ public class BatteryWidget {
 
 	public static final String TAG = "droidparts-battery-widget";
 
+	// Build.VERSION.SDK_INT is not available before 1.6
+	public static final int SDK_VERSION = Integer.parseInt(Build.VERSION.SDK);
+
 	public static final String PREFS = "common";
 	public static final String PREF_PACKAGE_NAME = "package";
 	public static final String PREF_CLASS_NAME = "class";
 	public static final String PREF_ACTIVITY_NAME = "name";
 	public static final String PREF_DESIGN_TYPE = "design-type";
+	public static final String PREF_SERVICE_LESS = "service-less";
 
 	public static final int DESIGN_COOL = 0;
 	public static final int DESIGN_AWFUL = 1;
 	public static final int DESIGN_AWFULLY_COOL = 2;
 	public static final int DESIGN_DESIGN_COLORFULL = 3;
+	public static final int DESIGN_SCALABLE = 4;
 
-    private static final String MIME = "org.droidparts.battery_widget/widget";
-	
-	public static void updateWidgets(Context context, int chargeLevel, boolean chargerConnected) {
+	// size of the battery image when the launcher does not tell the widget size
+	static final int DEFAULT_BATTERY_WIDTH = 72; // dp
+	static final int DEFAULT_BATTERY_HEIGHT = 54; // dp
+	private static final int BATTERY_PADDING = 18; // dp, top padding and remaining time
 
-		SharedPreferences prefs = context.getSharedPreferences(PREFS, MODE_PRIVATE);
-		int design = prefs.getInt(PREF_DESIGN_TYPE, DESIGN_AWFULLY_COOL);
-		
-		String level = chargeLevel < 10 ? "0" + chargeLevel : String.valueOf(chargeLevel);
+	// values last rendered per group, used for partial updates
+	private static RenderConfig[] sRenderedGroups;
+	private static int[] sRenderedLevel;
+	private static boolean[] sRenderedCharging;
+	private static int[] sRenderedRemaining;
+	private static final AtomicBoolean sFullUpdateRequired = new AtomicBoolean(true);
+
+	// AppWidgetManager.partiallyUpdateAppWidget(int[], RemoteViews), API level 11
+	private static Method sPartiallyUpdateAppWidget;
+	private static boolean sPartiallyUpdateAppWidgetChecked;
+
+	// AppWidgetManager.getAppWidgetOptions(int), API level 16
+	private static Method sGetAppWidgetOptions;
+	private static boolean sGetAppWidgetOptionsChecked;
+
+	// DisplayMetrics.densityDpi and Bitmap.setDensity(int), API level 4
+	private static Field sDensityDpi;
+	private static Method sSetDensity;
+	static {
+		if (SDK_VERSION >= 4) {
+			try {
+				sDensityDpi = DisplayMetrics.class.getField("densityDpi");
+				sSetDensity = Bitmap.class.getMethod("setDensity", int.class);
+			} catch (Exception e) {
+				Log.e(TAG, "cannot find density API", e);
+			}
+		}
+	}
+
+	private static WidgetRenderer sRenderer;
+
+	/**
+	 * Renders given state into all widget instances. Makes blocking calls to
+	 * the widget host, the service calls it through {@link WidgetUpdateThread}.
+	 */
+	public static synchronized void updateWidgets(Context context, int chargeLevel, boolean chargerConnected,
+			int remainingMinutes) {
+
+		AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
+		RenderConfig[] groups = RenderConfig.getGroups(context);
+
+		boolean full = sFullUpdateRequired.getAndSet(false);
+		if (groups != sRenderedGroups) {
+			sRenderedGroups = groups;
+			sRenderedLevel = new int[groups.length];
+			sRenderedCharging = new boolean[groups.length];
+			sRenderedRemaining = new int[groups.length];
+			full = true;
+		}
+		full = full || getPartialUpdateMethod() == null;
+
+		for (int i = 0; i < groups.length; i++) {
+			int[] appWidgetIds = groups[i].appWidgetIds;
+			if (groups[i].design == DESIGN_SCALABLE) {
+				// rendered per instance, each in its own size
+				for (int j = 0; j < appWidgetIds.length; j++) {
+					updateGroup(context, widgetManager, new int[] { appWidgetIds[j] }, j, groups[i], i, full,
+							chargeLevel, chargerConnected, remainingMinutes);
+				}
+			} else {
+				updateGroup(context, widgetManager, appWidgetIds, 0, groups[i], i, full, chargeLevel,
+						chargerConnected, remainingMinutes);
+			}
+			sRenderedLevel[i] = chargeLevel;
+			sRenderedCharging[i] = chargerConnected;
+			sRenderedRemaining[i] = remainingMinutes;
+		}
+
+		Log.d(TAG, full ? "widgets updated" : "widgets partially updated");
+	}
+
+	/**
+	 * Updates given instances of a group with views built once. The first
+	 * instance is at given index in the group.
+	 */
+	private static void updateGroup(Context context, AppWidgetManager widgetManager, int[] appWidgetIds,
+			int index, RenderConfig config, int group, boolean full, int chargeLevel, boolean chargerConnected,
+			int remainingMinutes) {
+		if (full) {
+			RemoteViews views = createViews(context, widgetManager, appWidgetIds[0], config, chargeLevel,
+					chargerConnected, remainingMinutes);
+			if (config.hasSharedClickIntent()) {
+				views.setOnClickPendingIntent(R.id.battery, config.getClickIntent(index));
+				widgetManager.updateAppWidget(appWidgetIds, views);
+			} else {
+				// own click intent per instance; the views collect one click
+				// action per instance sent, the last one set wins
+				for (int i = 0; i < appWidgetIds.length; i++) {
+					views.setOnClickPendingIntent(R.id.battery, config.getClickIntent(index + i));
+					widgetManager.updateAppWidget(new int[] { appWidgetIds[i] }, views);
+				}
+			}
+		} else {
+			RemoteViews views = createPartialViews(context, widgetManager, appWidgetIds[0], config,
+					sRenderedLevel[group], sRenderedCharging[group], sRenderedRemaining[group], chargeLevel,
+					chargerConnected, remainingMinutes);
+			if (views != null) {
+				partiallyUpdateAppWidget(widgetManager, appWidgetIds, views);
+			}
+		}
+	}
+
+	/**
+	 * Makes next update send complete views. Partial updates are not kept by
+	 * the system, so full views have to be sent again whenever the widget
+	 * host might have been recreated.
+	 */
+	public static void requestFullUpdate() {
+		sFullUpdateRequired.set(true);
+	}
+
+	private static RemoteViews createPartialViews(Context context, AppWidgetManager widgetManager, int appWidgetId,
+			RenderConfig config, int oldLevel, boolean oldCharging, int oldRemaining, int chargeLevel,
+			boolean chargerConnected, int remainingMinutes) {
+
+		RemoteViews views = null;
+
+		if (config.design == DESIGN_SCALABLE) {
+			if (oldLevel != chargeLevel || oldCharging != chargerConnected) {
+				views = new RemoteViews(context.getPackageName(), R.layout.battery_widget);
+				views.setImageViewBitmap(R.id.battery, getBatteryBitmap(context, widgetManager, appWidgetId,
+						config.design, chargeLevel, chargerConnected));
+			}
+		} else if (oldLevel != chargeLevel) {
+			views = new RemoteViews(context.getPackageName(), R.layout.battery_widget);
+			int icon = IconTable.getIcon(config.design, chargeLevel);
+			if (icon != IconTable.getIcon(config.design, oldLevel)) {
+				views.setImageViewResource(R.id.battery, icon);
+			}
+			int capacity = config.capacityRightBottom ? R.id.capacity_right_bottom : R.id.capacity_center;
+			views.setTextViewText(capacity, RenderConfig.getLevelText(chargeLevel));
+			if ((oldLevel < 100) != (chargeLevel < 100)) {
+				views.setViewVisibility(capacity, chargeLevel < 100 ? View.VISIBLE : View.GONE);
+			}
+		}
+
+		if (oldCharging != chargerConnected && config.design != DESIGN_SCALABLE) {
+			if (views == null) {
+				views = new RemoteViews(context.getPackageName(), R.layout.battery_widget);
+			}
+			views.setViewVisibility(R.id.lightning, chargerConnected ? View.VISIBLE : View.GONE);
+		}
+
+		if (oldRemaining != remainingMinutes) {
+			if (views == null) {
+				views = new RemoteViews(context.getPackageName(), R.layout.battery_widget);
+			}
+			if (remainingMinutes == RemainingTimeEstimator.UNKNOWN) {
+				views.setViewVisibility(R.id.remaining, View.GONE);
+			} else {
+				views.setTextViewText(R.id.remaining, RenderConfig.getRemainingText(remainingMinutes));
+				if (oldRemaining == RemainingTimeEstimator.UNKNOWN) {
+					views.setViewVisibility(R.id.remaining, View.VISIBLE);
+				}
+			}
+		}
+
+		return views;
+	}
+
+	private static Method getPartialUpdateMethod() {
+		if (!sPartiallyUpdateAppWidgetChecked) {
+			sPartiallyUpdateAppWidgetChecked = true;
+			try {
+				sPartiallyUpdateAppWidget = AppWidgetManager.class.getMethod("partiallyUpdateAppWidget",
+						int[].class, RemoteViews.class);
+			} catch (NoSuchMethodException e) {
+				// < 3.0
+			}
+		}
+		return sPartiallyUpdateAppWidget;
+	}
+
+	private static void partiallyUpdateAppWidget(AppWidgetManager widgetManager, int[] appWidgetIds,
+			RemoteViews views) {
+		try {
+			sPartiallyUpdateAppWidget.invoke(widgetManager, appWidgetIds, views);
+		} catch (Exception e) {
+			Log.e(TAG, "cannot update widgets partially", e);
+			sFullUpdateRequired.set(true);
+		}
+	}
+
+	private static RemoteViews createViews(Context context, AppWidgetManager widgetManager, int appWidgetId,
+			RenderConfig config, int chargeLevel, boolean chargerConnected, int remainingMinutes) {
+
+		String level = RenderConfig.getLevelText(chargeLevel);
 		
-		// create views
+		// create views, the click intent is set by the caller
 		RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.battery_widget);
 		
-		// update level
-		PendingIntent pendingIntent = getPendingIntent(context);
-		views.setOnClickPendingIntent(R.id.battery, pendingIntent);
-		views.setInt(R.id.battery, "setImageLevel", getIconLevel(chargeLevel, design));
+		if (config.design == DESIGN_SCALABLE) {
+			// level and lightning are drawn into the bitmap
+			views.setImageViewBitmap(R.id.battery, getBatteryBitmap(context, widgetManager, appWidgetId,
+					config.design, chargeLevel, chargerConnected));
+			views.setViewVisibility(R.id.capacity_center, View.GONE);
+			views.setViewVisibility(R.id.capacity_right_bottom, View.GONE);
+			views.setViewVisibility(R.id.lightning, View.GONE);
+			setRemainingTime(views, remainingMinutes);
+			return views;
+		}
+		views.setImageViewResource(R.id.battery, IconTable.getIcon(config.design, chargeLevel));
 		
 		// update charge level
-		if (isCapacityRightBottom(design)) { // right-bottom
+		if (config.capacityRightBottom) { // right-bottom
 			// hide center capacity
 			views.setViewVisibility(R.id.capacity_center, View.GONE);
 			// update visible capacity
@@ -78,41 +277,111 @@ public class BatteryWidget {
 		// update lightning visibility
 		views.setViewVisibility(R.id.lightning, chargerConnected ? View.VISIBLE : View.GONE);
 		
-		// update widgets
-		AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
-		ComponentName componentName = new ComponentName(context, BatteryWidgetProvider.class);
-		widgetManager.updateAppWidget(componentName, views);
+		// update remaining time
+		setRemainingTime(views, remainingMinutes);
 		
-		Log.d(TAG, "widgets updated");
+		return views;
 	}
 
-	private static PendingIntent getPendingIntent(Context context) {
-
-		SharedPreferences prefs = context.getSharedPreferences(PREFS, MODE_PRIVATE);
-		String name = prefs.getString(PREF_ACTIVITY_NAME, null);
-		
-		if (name == null) {
-			Intent intent = new Intent(Intent.ACTION_VIEW);
-			intent.setType(MIME);
-			return PendingIntent.getActivity(context, 0, intent, 0);
+	private static void setRemainingTime(RemoteViews views, int remainingMinutes) {
+		if (remainingMinutes == RemainingTimeEstimator.UNKNOWN) {
+			views.setViewVisibility(R.id.remaining, View.GONE);
 		} else {
-			String className = prefs.getString(PREF_CLASS_NAME, null);
-			String packageName = prefs.getString(PREF_PACKAGE_NAME, null);
-			Intent intent = new Intent();
-			intent.setClassName(packageName, className);
-			return PendingIntent.getActivity(context, 0, intent, 0);
-			
-		}
-	}
-	
-	public static int getIconLevel(int chargeLevel, int design) {
-		switch (design) {
-			case DESIGN_COOL: return chargeLevel;
-			case DESIGN_AWFUL:
-			case DESIGN_AWFULLY_COOL: return 200 + chargeLevel;
-			case DESIGN_DESIGN_COLORFULL: return 400 + chargeLevel;
-			default: return chargeLevel;
+			views.setTextViewText(R.id.remaining, RenderConfig.getRemainingText(remainingMinutes));
+			views.setViewVisibility(R.id.remaining, View.VISIBLE);
+		}
+	}
+
+	/**
+	 * Returns battery of the scalable design drawn in the size of given
+	 * widget instance.
+	 */
+	private static Bitmap getBatteryBitmap(Context context, AppWidgetManager widgetManager, int appWidgetId,
+			int design, int chargeLevel, boolean chargerConnected) {
+		int width = DEFAULT_BATTERY_WIDTH;
+		int height = DEFAULT_BATTERY_HEIGHT;
+		Bundle options = getAppWidgetOptions(widgetManager, appWidgetId);
+		if (options != null && options.getInt("appWidgetMinWidth") > 0) {
+			width = options.getInt("appWidgetMinWidth");
+			height = Math.max(options.getInt("appWidgetMinHeight") - BATTERY_PADDING, BATTERY_PADDING);
+		}
+		DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+		if (sRenderer == null) {
+			sRenderer = new WidgetRenderer();
+		}
+		return sRenderer.getBitmap(design, chargeLevel, chargerConnected, Math.round(width * metrics.density),
+				Math.round(height * metrics.density), getDensityDpi(metrics));
+	}
+
+	/**
+	 * Returns screen density in dpi, 160 before Android 1.6 which only
+	 * supports screens of that density.
+	 */
+	static int getDensityDpi(DisplayMetrics metrics) {
+		if (sDensityDpi != null) {
+			try {
+				return sDensityDpi.getInt(metrics);
+			} catch (Exception e) {
+				Log.e(TAG, "cannot get screen density", e);
+			}
+		}
+		return 160; // DisplayMetrics.DENSITY_DEFAULT
+	}
+
+	/**
+	 * Sets density of given bitmap in dpi, does nothing before Android 1.6
+	 * where bitmaps have no density.
+	 */
+	static void setDensity(Bitmap bitmap, int density) {
+		if (sSetDensity != null) {
+			try {
+				sSetDensity.invoke(bitmap, density);
+			} catch (Exception e) {
+				Log.e(TAG, "cannot set bitmap density", e);
+			}
+		}
+	}
+
+	private static Bundle getAppWidgetOptions(AppWidgetManager widgetManager, int appWidgetId) {
+		if (!sGetAppWidgetOptionsChecked) {
+			sGetAppWidgetOptionsChecked = true;
+			try {
+				sGetAppWidgetOptions = AppWidgetManager.class.getMethod("getAppWidgetOptions", int.class);
+			} catch (NoSuchMethodException e) {
+				// < 4.1
+			}
+		}
+		if (sGetAppWidgetOptions == null) {
+			return null;
+		}
+		try {
+			return (Bundle) sGetAppWidgetOptions.invoke(widgetManager, appWidgetId);
+		} catch (Exception e) {
+			Log.e(TAG, "cannot get widget options", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns preference key for given widget instance, or the default key
+	 * if the instance is invalid.
+	 */
+	public static String getPrefKey(String key, int appWidgetId) {
+		if (appWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+			return key;
+		}
+		return key + "-" + appWidgetId;
+	}
+
+	/**
+	 * Removes configuration of given widget instances.
+	 */
+	public static void removeConfiguration(Context context, int[] appWidgetIds) {
+		SettingsStore.Editor editor = SettingsStore.getInstance(context).edit();
+		for (int appWidgetId : appWidgetIds) {
+			editor.removeConfiguration(appWidgetId);
 		}
+		editor.apply();
 	}
 
 	public static boolean isCapacityRightBottom(int design) {
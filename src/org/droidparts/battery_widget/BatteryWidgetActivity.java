@@ -16,37 +16,30 @@
 
 package org.droidparts.battery_widget;
 
-import static org.droidparts.battery_widget.BatteryWidget.DESIGN_AWFULLY_COOL;
-import static org.droidparts.battery_widget.BatteryWidget.PREFS;
-import static org.droidparts.battery_widget.BatteryWidget.PREF_ACTIVITY_NAME;
-import static org.droidparts.battery_widget.BatteryWidget.PREF_DESIGN_TYPE;
-
 import android.app.Activity;
-import android.app.AlertDialog;
-import android.app.Dialog;
 import android.appwidget.AppWidgetManager;
-import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.res.Resources;
 import android.os.Bundle;
-import android.os.Handler;
 import android.view.View;
 import android.view.Window;
 import android.view.View.OnClickListener;
-import android.widget.ImageView;
+import android.widget.CheckBox;
 import android.widget.TextView;
 
-public class BatteryWidgetActivity extends Activity implements OnClickListener,
-		android.content.DialogInterface.OnClickListener, Runnable {
+public class BatteryWidgetActivity extends Activity implements OnClickListener {
 
-	private static final int[] LEVELS = new int[] {1, 10, 20, 30, 40, 60, 80, 99, 100};
-	private static final int[] MAPPING = new int[] {0, 3, 2, 1};
+	private static final int PREVIEW_LEVEL = 70;
 
-	private Handler mHandler = new Handler();
-	private SharedPreferences mPrefs;
-	private int mLevel;
 	private int mDesign;
+	private int mAppWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
+	private WidgetRenderer mRenderer;
+
+	// views
+	private View mPreview;
+	private TextView mDesignText;
+	private TextView mActivityText;
+	private CheckBox mServiceLess;
+	private String[] mDesignNames;
 	
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -55,16 +48,24 @@ public class BatteryWidgetActivity extends Activity implements OnClickListener,
 
 		findViewById(R.id.link0).setOnClickListener(this);
 		findViewById(R.id.link1).setOnClickListener(this);
+		findViewById(R.id.link2).setOnClickListener(this);
+		findViewById(R.id.link3).setOnClickListener(this);
 		findViewById(R.id.button1).setOnClickListener(this);
 
-		mPrefs = getApplication().getSharedPreferences(PREFS, MODE_PRIVATE);
+		mPreview = findViewById(R.id.appearance);
+		mDesignText = (TextView) findViewById(R.id.design_descr);
+		mActivityText = (TextView) findViewById(R.id.assigned_activity_descr);
+		mServiceLess = (CheckBox) findViewById(R.id.service_less);
+		mDesignNames = getResources().getStringArray(R.array.design_names);
 	}
 
-	protected void onPause() {
-		super.onPause();
-		schedulePreviewUpdate(false);
+	protected void onDestroy() {
+		super.onDestroy();
+		if (mRenderer != null) {
+			mRenderer.clear();
+		}
 	}
-	
+
 	protected void onResume() {
 		super.onResume();
 		
@@ -73,12 +74,13 @@ public class BatteryWidgetActivity extends Activity implements OnClickListener,
 
 		Intent intent = getIntent();
 		Bundle extras = intent.getExtras();
-		int mAppWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
 		if (extras != null) {
 			mAppWidgetId = extras.getInt(AppWidgetManager.EXTRA_APPWIDGET_ID, AppWidgetManager.INVALID_APPWIDGET_ID);
 		}
 
-		if (mAppWidgetId != AppWidgetManager.INVALID_APPWIDGET_ID) {
+		// the widget opens this activity with its id too, only placing waits for a result
+		if (mAppWidgetId != AppWidgetManager.INVALID_APPWIDGET_ID
+				&& AppWidgetManager.ACTION_APPWIDGET_CONFIGURE.equals(intent.getAction())) {
 			// set result OK
 			Intent resultValue = new Intent();
 			resultValue.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, mAppWidgetId);
@@ -86,90 +88,44 @@ public class BatteryWidgetActivity extends Activity implements OnClickListener,
 		}
 
 		// update description
-		String name = mPrefs.getString(PREF_ACTIVITY_NAME, null);
-		TextView textView = (TextView) findViewById(R.id.assigned_activity_descr);
-		textView.setText(name == null ? getString(R.string.txt_assigned_activity_descr) : name);
+		SettingsStore.Snapshot settings = SettingsStore.get(this);
+		String name = settings.getActivityName(settings.hasActivity(mAppWidgetId) ? mAppWidgetId
+				: AppWidgetManager.INVALID_APPWIDGET_ID);
+		mActivityText.setText(name == null ? getString(R.string.txt_assigned_activity_descr) : name);
 
-		mDesign = mPrefs.getInt(PREF_DESIGN_TYPE, DESIGN_AWFULLY_COOL);
-		updateWidgetPreview(100);
-		
-		mHandler.postDelayed(this, 1000);
+		mServiceLess.setChecked(settings.isServiceLess());
+
+		// the gallery may have changed the design
+		mDesign = settings.getDesign(mAppWidgetId);
+		updateWidgetPreview();
 	}
 	
- 	private void updateWidgetPreview(int chargeLevel) {
- 		int design = mDesign;
-		
- 		// lightning
- 		ImageView img = (ImageView) findViewById(R.id.lightning);
- 		img.setVisibility(chargeLevel < 100 ? View.VISIBLE : View.GONE);
- 		
- 		// design
-		img = (ImageView) findViewById(R.id.battery);
-		img.setImageLevel(BatteryWidget.getIconLevel(chargeLevel, design));
-
-		TextView capacity_center = (TextView) findViewById(R.id.capacity_center);
-		TextView capacity_right_bottom = (TextView) findViewById(R.id.capacity_right_bottom);
-
-		String levelText = chargeLevel < 10 ? "0" + chargeLevel : String.valueOf(chargeLevel);
-
-		if (BatteryWidget.isCapacityRightBottom(design)) { // right-bottom
-			capacity_center.setVisibility(View.GONE);
-			capacity_right_bottom.setText(levelText);
-			capacity_right_bottom.setVisibility(chargeLevel < 100 ? View.VISIBLE : View.GONE);
-		} else { // center
-			capacity_right_bottom.setVisibility(View.GONE);
-			capacity_center.setText(levelText);
-			capacity_center.setVisibility(chargeLevel < 100 ? View.VISIBLE : View.GONE);
-		}
-
-		// text
-		Resources res = getResources();
-		String[] designNames = res.getStringArray(R.array.design_names);
-		TextView text = (TextView) findViewById(R.id.design_descr);
-		text.setText(designNames[MAPPING[design]]);
+ 	private void updateWidgetPreview() {
+ 		if (mDesign == BatteryWidget.DESIGN_SCALABLE && mRenderer == null) {
+ 			mRenderer = new WidgetRenderer();
+ 		}
+ 		DesignThumbnails.bindPreview(mPreview, mDesign, PREVIEW_LEVEL, false, mRenderer);
+		mDesignText.setText(mDesignNames[DesignGalleryActivity.getPosition(mDesign)]);
 	}
 
 	public void onClick(View view) {
 		int id = view.getId();
 		if (id == R.id.link0) { // choose design
-			showDialog(0);
+			Intent intent = new Intent(this, DesignGalleryActivity.class);
+			intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, mAppWidgetId);
+			startActivity(intent);
 		} else if (id == R.id.link1) {
 			Intent intent = new Intent(this, SettingsActivityList.class);
+			intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, mAppWidgetId);
+			startActivity(intent);
+		} else if (id == R.id.link2) {
+			Intent intent = new Intent(this, BatteryHistoryActivity.class);
 			startActivity(intent);
+		} else if (id == R.id.link3) { // service-less mode
+			mServiceLess.setChecked(!mServiceLess.isChecked());
+			ServicelessUpdater.setEnabled(this, mServiceLess.isChecked());
 		} else if (id == R.id.button1) { // done
 			finish();
 		}
 	}
-
-	protected Dialog onCreateDialog(int id) {
-		AlertDialog.Builder builder = new AlertDialog.Builder(this);
-		builder.setItems(R.array.design_names, this);
-		builder.setTitle(R.string.txt_select_widget_design);
-		return builder.create();
-	}
-
-	public void onClick(DialogInterface dialog, int which) {
-		dismissDialog(0);
-		if (which > -1) {
-			mDesign = MAPPING[which];
-			mPrefs.edit().putInt(PREF_DESIGN_TYPE, mDesign).commit();
-			schedulePreviewUpdate(true);
-			BatteryService.requestWidgetUpdate(this);
-		}
-	}
-
-	public void run() {
-		if (++mLevel == LEVELS.length) {
-			mLevel = 0;
-		}
-		updateWidgetPreview(LEVELS[mLevel]);
-		mHandler.postDelayed(this, 700);
-	}
-
-	private void schedulePreviewUpdate(boolean active) {
-		mHandler.removeCallbacks(this);
-		if (active) {
-			mHandler.post(this);
-		}
-	}
 }
@@ -16,27 +16,42 @@
 
 package org.droidparts.battery_widget;
 
-import static android.content.Context.MODE_PRIVATE;
-import static org.droidparts.battery_widget.BatteryWidget.PREFS;
 import static org.droidparts.battery_widget.BatteryWidget.TAG;
 
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.util.Log;
 
 public class BatteryWidgetProvider extends AppWidgetProvider {
     
 	public static final String EXT_UPDATE_WIDGETS = "updateWidgets";
+	private static final String ACTION_APPWIDGET_OPTIONS_CHANGED = "android.appwidget.action.APPWIDGET_UPDATE_OPTIONS";
 	private static final String BATTERY_SERVICE_ACTION = "org.droidparts.battery_widget.BatteryService";
 	
 	public void onEnabled(Context context) {
 		Log.d(TAG, "provider.enabled");
 		
-		Intent intent = new Intent(BATTERY_SERVICE_ACTION);
-		context.startService(intent);
+		if (ServicelessUpdater.isEnabled(context)) {
+			ServicelessUpdater.schedule(context, true);
+		} else {
+			Intent intent = new Intent(BATTERY_SERVICE_ACTION);
+			context.startService(intent);
+		}
+	}
+
+	public void onReceive(Context context, Intent intent) {
+		if (ServicelessUpdater.ACTION_REFRESH.equals(intent.getAction())) {
+			ServicelessUpdater.update(context);
+		} else if (ACTION_APPWIDGET_OPTIONS_CHANGED.equals(intent.getAction())) {
+			// widget resized, scalable design has to be drawn in the new size
+			Log.d(TAG, "provider.optionsChanged");
+			BatteryWidget.requestFullUpdate();
+			BatteryService.requestWidgetUpdate(context);
+		} else {
+			super.onReceive(context, intent);
+		}
 	}
 
 	public void onDisabled(Context context) {
@@ -45,14 +60,25 @@ public class BatteryWidgetProvider extends AppWidgetProvider {
 		// stop service
 		Intent intent = new Intent(BATTERY_SERVICE_ACTION);
 		context.stopService(intent);
+		ServicelessUpdater.schedule(context, false);
 		
 		// remove configuration
-		SharedPreferences prefs = context.getSharedPreferences(PREFS, MODE_PRIVATE);
-		prefs.edit().remove(BatteryWidget.PREF_ACTIVITY_NAME).commit();
+		SettingsStore.getInstance(context).edit().removeActivityName(AppWidgetManager.INVALID_APPWIDGET_ID).apply();
 	}
 
 	public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
 		Log.d(TAG, "provider.update");
+		RenderConfig.invalidate(); // instances may have been added
+		if (ServicelessUpdater.isEnabled(context)) {
+			// alarms do not survive a reboot, setting the same one again is harmless
+			ServicelessUpdater.schedule(context, true);
+		}
 		BatteryService.requestWidgetUpdate(context);
 	}
+
+	public void onDeleted(Context context, int[] appWidgetIds) {
+		Log.d(TAG, "provider.deleted");
+		BatteryWidget.removeConfiguration(context, appWidgetIds);
+		RenderConfig.invalidate();
+	}
 }
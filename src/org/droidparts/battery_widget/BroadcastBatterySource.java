@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+/**
+ * Battery state from the sticky battery broadcast. The system delivers the
+ * last broadcast right after registration.
+ */
+public class BroadcastBatterySource extends BatterySource {
+
+	private BroadcastReceiver mReceiver;
+
+	@Override
+	public void start(Context context, Listener listener) {
+		mListener = listener;
+		if (mReceiver == null) {
+			mReceiver = new BroadcastReceiver() {
+				@Override
+				public void onReceive(Context context, Intent intent) {
+					if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+						mTime = System.currentTimeMillis();
+						mLevel = BatteryService.getChargeLevel(intent);
+						mPlugged = intent.getIntExtra("plugged", 0);
+						mStatus = intent.getIntExtra("status", STATUS_UNKNOWN);
+						mHealth = intent.getIntExtra("health", 0);
+						mTemperature = intent.getIntExtra("temperature", 0);
+						mVoltage = intent.getIntExtra("voltage", 0);
+						mTechnology = intent.getStringExtra("technology");
+						mListener.onBatteryChanged(BroadcastBatterySource.this);
+					}
+				}
+			};
+			context.registerReceiver(mReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+		}
+	}
+
+	@Override
+	public void stop(Context context) {
+		if (mReceiver != null) {
+			context.unregisterReceiver(mReceiver);
+			mReceiver = null;
+		}
+	}
+}
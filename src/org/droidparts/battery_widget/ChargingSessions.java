@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Detects charging sessions, from plugging the charger in to unplugging it,
+ * in the stream of battery samples and keeps a fixed-size summary of each.
+ * Summaries are appended to a file and held in primitive arrays, so listing
+ * and aggregating sessions never scans the raw history. Samples are added
+ * from the main thread; reading is allowed from any thread.
+ *
+ * <pre>
+ * header (8 bytes): magic, version, record size
+ * record (24 bytes): start time, duration, start level, end level, plug type,
+ *                    average rate, peak rate, time at full
+ * </pre>
+ *
+ * Rates are in tenths of percent per hour, durations in seconds. The
+ * average rate leaves out the time spent at full charge.
+ * <p>
+ * The open session is stored as the last record with a duration of -1 and
+ * the last seen level as end level, written when it starts and on
+ * {@link #flush()}, and overwritten by its summary when it ends. A session
+ * open when the process died is therefore continued after a restart.
+ * Exact plug and unplug times come from {@link PowerConnectionReceiver},
+ * which runs even while the service is stopped or sleeps with the screen off.
+ */
+public class ChargingSessions {
+
+	public static final String FILE_NAME = "sessions.log";
+
+	private static final int MAGIC = 0x42574353; // "BWCS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_SIZE = 24;
+	private static final int OPEN = -1; // duration of the open session
+
+	private static final long MIN_RATE_INTERVAL = 30 * 1000L; // shorter steps give no reliable rate
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private static ChargingSessions sInstance;
+
+	private final File mFile;
+
+	// index, one entry per session
+	private int mSize;
+	private long[] mStartTime = new long[16];
+	private int[] mDuration = new int[16];
+	private byte[] mStartLevel = new byte[16];
+	private byte[] mEndLevel = new byte[16];
+	private byte[] mPlugType = new byte[16];
+	private short[] mAverageRate = new short[16];
+	private short[] mPeakRate = new short[16];
+	private int[] mTimeAtFull = new int[16];
+
+	// current session, main thread only
+	private boolean mActive;
+	private long mSessionStart;
+	private int mSessionStartLevel;
+	private int mSessionPlugType;
+	private long mLastTime;
+	private boolean mLastFull;
+	private long mStepTime;
+	private int mStepLevel;
+	private int mPeak; // tenths of percent per hour
+	private long mFullTime; // ms
+	private long mOpenOffset = -1; // file offset of the open session record
+
+	private ChargingSessions(File file) {
+		mFile = file;
+	}
+
+	/**
+	 * Returns the sessions shared within the process, loaded from the file
+	 * on first access.
+	 */
+	public static synchronized ChargingSessions getInstance(Context context) {
+		if (sInstance == null) {
+			ChargingSessions sessions = new ChargingSessions(new File(context.getFilesDir(), FILE_NAME));
+			long start = SystemClock.uptimeMillis();
+			sessions.load();
+			Log.d(TAG, sessions.size() + " charging sessions loaded in " + (SystemClock.uptimeMillis() - start)
+					+ " ms");
+			sInstance = sessions;
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Adds battery sample. A session starts when the charger gets plugged in
+	 * and is stored when it gets unplugged.
+	 */
+	public void add(long time, int level, int plugged, int status) {
+		if (time <= 0 || level < 0) {
+			return;
+		}
+		if (!mActive) {
+			if (plugged > 0) {
+				start(time, level, plugged, isFull(level, status));
+			}
+			return;
+		}
+
+		if (time < mLastTime) {
+			return; // clock went back
+		}
+		if (mSessionPlugType == 0) {
+			mSessionPlugType = plugged; // started by the receiver
+		}
+		if (mLastFull) {
+			mFullTime += time - mLastTime;
+		}
+		if (level > mStepLevel) {
+			long interval = time - mStepTime;
+			if (interval >= MIN_RATE_INTERVAL) {
+				mPeak = Math.max(mPeak, getRate(level - mStepLevel, interval));
+			}
+			mStepTime = time;
+			mStepLevel = level;
+		} else if (level < mStepLevel) {
+			mStepTime = time; // discharging while plugged, restart the step
+			mStepLevel = level;
+		}
+		mLastTime = time;
+		mLastFull = isFull(level, status);
+
+		if (plugged == 0) {
+			mActive = false;
+			long duration = time - mSessionStart;
+			int average = getRate(level - mSessionStartLevel, duration - mFullTime);
+			append(mSessionStart, (int) (duration / 1000), mSessionStartLevel, level, mSessionPlugType, average,
+					mPeak, (int) (mFullTime / 1000));
+		}
+	}
+
+	/**
+	 * Starts a session at given time unless one is open. Called when the
+	 * charger gets plugged in, given plug type may be 0 if not known yet.
+	 */
+	public void onPowerConnected(long time, int level, int plugged) {
+		if (!mActive && time > 0 && level >= 0) {
+			start(time, level, plugged, level >= 100);
+		}
+	}
+
+	/**
+	 * Ends the open session at given time. Called when the charger gets
+	 * unplugged.
+	 */
+	public void onPowerDisconnected(long time, int level) {
+		if (mActive) {
+			add(time, level, 0, BatterySource.STATUS_UNKNOWN);
+		}
+	}
+
+	/**
+	 * Stores the progress of the open session, if any.
+	 */
+	public void flush() {
+		if (mActive) {
+			mOpenOffset = write(mOpenOffset, mSessionStart, OPEN, mSessionStartLevel, mStepLevel, mSessionPlugType,
+					0, mPeak, (int) (mFullTime / 1000));
+		}
+	}
+
+	private void start(long time, int level, int plugged, boolean full) {
+		mActive = true;
+		mSessionStart = mLastTime = mStepTime = time;
+		mSessionStartLevel = mStepLevel = level;
+		mSessionPlugType = plugged;
+		mLastFull = full;
+		mPeak = 0;
+		mFullTime = 0;
+		flush();
+	}
+
+	/**
+	 * Returns number of sessions, oldest one has index 0.
+	 */
+	public synchronized int size() {
+		return mSize;
+	}
+
+	public synchronized long getStartTime(int index) {
+		return mStartTime[index];
+	}
+
+	/**
+	 * Returns session duration in seconds.
+	 */
+	public synchronized int getDuration(int index) {
+		return mDuration[index];
+	}
+
+	public synchronized int getStartLevel(int index) {
+		return mStartLevel[index];
+	}
+
+	public synchronized int getEndLevel(int index) {
+		return mEndLevel[index];
+	}
+
+	/**
+	 * Returns {@link BatterySource#PLUGGED_AC}, {@link BatterySource#PLUGGED_USB}
+	 * or another plug type reported by the system.
+	 */
+	public synchronized int getPlugType(int index) {
+		return mPlugType[index];
+	}
+
+	/**
+	 * Returns average charge rate in tenths of percent per hour.
+	 */
+	public synchronized int getAverageRate(int index) {
+		return mAverageRate[index];
+	}
+
+	/**
+	 * Returns peak charge rate in tenths of percent per hour.
+	 */
+	public synchronized int getPeakRate(int index) {
+		return mPeakRate[index];
+	}
+
+	/**
+	 * Returns time spent at full charge in seconds.
+	 */
+	public synchronized int getTimeAtFull(int index) {
+		return mTimeAtFull[index];
+	}
+
+	/**
+	 * Aggregates sessions of given plug type, 0 for any, started within
+	 * [from, to). Stores mean average rate, mean peak rate, maximum peak rate
+	 * and total duration in seconds into given array. Returns number of
+	 * sessions aggregated.
+	 */
+	public synchronized int aggregate(int plugType, long from, long to, long[] result) {
+		int count = 0;
+		long averageSum = 0;
+		long peakSum = 0;
+		long peakMax = 0;
+		long duration = 0;
+		for (int i = findIndex(from); i < mSize && mStartTime[i] < to; i++) {
+			if (plugType != 0 && mPlugType[i] != plugType) {
+				continue;
+			}
+			count++;
+			averageSum += mAverageRate[i];
+			peakSum += mPeakRate[i];
+			peakMax = Math.max(peakMax, mPeakRate[i]);
+			duration += mDuration[i];
+		}
+		result[0] = count == 0 ? 0 : averageSum / count;
+		result[1] = count == 0 ? 0 : peakSum / count;
+		result[2] = peakMax;
+		result[3] = duration;
+		return count;
+	}
+
+	/**
+	 * Prints per plug type aggregates of all sessions.
+	 */
+	public void dump(PrintWriter pw) {
+		long[] result = new long[4];
+		int[] types = { BatterySource.PLUGGED_AC, BatterySource.PLUGGED_USB };
+		String[] names = { "ac", "usb" };
+		pw.println("charging sessions: " + size());
+		for (int i = 0; i < types.length; i++) {
+			int count = aggregate(types[i], 0, Long.MAX_VALUE, result);
+			if (count > 0) {
+				pw.println("  " + names[i] + ": " + count + " sessions, average " + result[0] / 10f
+						+ " %/h, peak " + result[1] / 10f + " %/h (max " + result[2] / 10f + "), "
+						+ result[3] / 3600 + " h");
+			}
+		}
+	}
+
+	private int findIndex(long time) {
+		int low = 0;
+		int high = mSize - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (mStartTime[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	private static boolean isFull(int level, int status) {
+		return level >= 100 || status == BatterySource.STATUS_FULL;
+	}
+
+	private static int getRate(int levels, long interval) {
+		if (levels <= 0 || interval <= 0) {
+			return 0;
+		}
+		return (int) Math.min(levels * 10L * HOUR / interval, Short.MAX_VALUE);
+	}
+
+	private void append(long startTime, int duration, int startLevel, int endLevel, int plugType, int averageRate,
+			int peakRate, int timeAtFull) {
+		// replaces the record of the open session
+		write(mOpenOffset, startTime, duration, startLevel, endLevel, plugType, averageRate, peakRate, timeAtFull);
+		mOpenOffset = -1;
+		synchronized (this) {
+			put(startTime, duration, startLevel, endLevel, plugType, averageRate, peakRate, timeAtFull);
+		}
+		Log.d(TAG, "charging session: " + startLevel + "% -> " + endLevel + "% in " + duration / 60 + " min, average "
+				+ averageRate / 10f + " %/h, peak " + peakRate / 10f + " %/h");
+	}
+
+	/**
+	 * Writes a record at given offset, appends it if the offset is -1.
+	 * Returns the offset written to, or -1 on failure.
+	 */
+	private long write(long offset, long startTime, int duration, int startLevel, int endLevel, int plugType,
+			int averageRate, int peakRate, int timeAtFull) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(mFile, "rw");
+			long length = file.length();
+			if (length < HEADER_SIZE) {
+				file.setLength(0);
+				file.writeInt(MAGIC);
+				file.writeShort(VERSION);
+				file.writeShort(RECORD_SIZE);
+				length = HEADER_SIZE;
+			}
+			if (offset < HEADER_SIZE || offset > length) {
+				// drop a partial record left by a crash
+				offset = length - (length - HEADER_SIZE) % RECORD_SIZE;
+			}
+			file.seek(offset);
+			file.writeLong(startTime);
+			file.writeInt(duration);
+			file.writeByte(startLevel);
+			file.writeByte(endLevel);
+			file.writeByte(plugType);
+			file.writeByte(0); // reserved
+			file.writeShort(averageRate);
+			file.writeShort(peakRate);
+			file.writeInt(timeAtFull);
+			return offset;
+		} catch (IOException e) {
+			Log.e(TAG, "cannot store charging session", e);
+			return -1;
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void load() {
+		if (!mFile.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), 8 * 1024));
+			if (in.readInt() != MAGIC || in.readShort() != VERSION || in.readShort() != RECORD_SIZE) {
+				Log.w(TAG, "incompatible charging sessions file, ignored");
+				return;
+			}
+			long offset = HEADER_SIZE;
+			while (true) {
+				long startTime = in.readLong();
+				int duration = in.readInt();
+				int startLevel = in.readByte();
+				int endLevel = in.readByte();
+				int plugType = in.readByte();
+				in.readByte(); // reserved
+				int averageRate = in.readShort();
+				int peakRate = in.readShort();
+				int timeAtFull = in.readInt();
+				if (duration != OPEN) {
+					put(startTime, duration, startLevel, endLevel, plugType, averageRate, peakRate, timeAtFull);
+				} else if (in.available() < RECORD_SIZE) {
+					// open session, the last record
+					resume(offset, startTime, startLevel, endLevel, plugType, peakRate, timeAtFull);
+				}
+				offset += RECORD_SIZE;
+			}
+		} catch (EOFException e) {
+			// end of file, a partial record is ignored
+		} catch (IOException e) {
+			Log.e(TAG, "cannot read charging sessions", e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void resume(long offset, long startTime, int startLevel, int lastLevel, int plugType, int peakRate,
+			int timeAtFull) {
+		mActive = true;
+		mOpenOffset = offset;
+		mSessionStart = mLastTime = mStepTime = startTime; // time of the last level is not stored
+		mSessionStartLevel = startLevel;
+		mStepLevel = lastLevel;
+		mSessionPlugType = plugType;
+		mLastFull = false;
+		mPeak = peakRate;
+		mFullTime = timeAtFull * 1000L;
+		Log.d(TAG, "open charging session since " + startTime + " resumed");
+	}
+
+	private void put(long startTime, int duration, int startLevel, int endLevel, int plugType, int averageRate,
+			int peakRate, int timeAtFull) {
+		if (mSize == mStartTime.length) {
+			int capacity = mSize * 2;
+			mStartTime = copyOf(mStartTime, capacity);
+			mDuration = copyOf(mDuration, capacity);
+			mStartLevel = copyOf(mStartLevel, capacity);
+			mEndLevel = copyOf(mEndLevel, capacity);
+			mPlugType = copyOf(mPlugType, capacity);
+			mAverageRate = copyOf(mAverageRate, capacity);
+			mPeakRate = copyOf(mPeakRate, capacity);
+			mTimeAtFull = copyOf(mTimeAtFull, capacity);
+		}
+		int i = mSize++;
+		mStartTime[i] = startTime;
+		mDuration[i] = duration;
+		mStartLevel[i] = (byte) startLevel;
+		mEndLevel[i] = (byte) endLevel;
+		mPlugType[i] = (byte) plugType;
+		mAverageRate[i] = (short) averageRate;
+		mPeakRate[i] = (short) peakRate;
+		mTimeAtFull[i] = timeAtFull;
+	}
+
+	// Arrays.copyOf is not available before Android 2.3
+	private static long[] copyOf(long[] array, int length) {
+		long[] copy = new long[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	private static short[] copyOf(short[] array, int length) {
+		short[] copy = new short[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	private static byte[] copyOf(byte[] array, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import android.app.ListActivity;
+import android.appwidget.AppWidgetManager;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.RadioButton;
+import android.widget.TextView;
+
+/**
+ * Shows all designs at several charge levels at once. Tapping a design
+ * selects it for the widget being configured.
+ */
+public class DesignGalleryActivity extends ListActivity {
+
+	// designs in order of the design_names array
+	static final int[] DESIGNS = new int[] {
+		BatteryWidget.DESIGN_COOL,
+		BatteryWidget.DESIGN_DESIGN_COLORFULL,
+		BatteryWidget.DESIGN_AWFULLY_COOL,
+		BatteryWidget.DESIGN_AWFUL,
+		BatteryWidget.DESIGN_SCALABLE };
+
+	private DesignThumbnails mThumbnails;
+	private String[] mNames;
+	private int mDesign;
+	private int mAppWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
+
+	private static class ViewHolder {
+		TextView name;
+		ImageView thumbnail;
+		RadioButton selected;
+	}
+
+	private class DesignAdapter extends BaseAdapter {
+		private final LayoutInflater mInflater = LayoutInflater.from(DesignGalleryActivity.this);
+
+		public int getCount() {
+			return DESIGNS.length;
+		}
+
+		public Object getItem(int position) {
+			return Integer.valueOf(DESIGNS[position]);
+		}
+
+		public long getItemId(int position) {
+			return DESIGNS[position];
+		}
+
+		public View getView(int position, View convertView, ViewGroup parent) {
+			ViewHolder holder;
+			if (convertView == null) {
+				convertView = mInflater.inflate(R.layout.design_item, parent, false);
+				holder = new ViewHolder();
+				holder.name = (TextView) convertView.findViewById(R.id.text1);
+				holder.thumbnail = (ImageView) convertView.findViewById(R.id.icon);
+				holder.selected = (RadioButton) convertView.findViewById(R.id.selected);
+				convertView.setTag(holder);
+			} else {
+				holder = (ViewHolder) convertView.getTag();
+			}
+
+			int design = DESIGNS[position];
+			holder.name.setText(mNames[position]);
+			holder.selected.setChecked(design == mDesign);
+			mThumbnails.bind(holder.thumbnail, design);
+			return convertView;
+		}
+	}
+
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		Bundle extras = getIntent().getExtras();
+		if (extras != null) {
+			mAppWidgetId = extras.getInt(AppWidgetManager.EXTRA_APPWIDGET_ID, AppWidgetManager.INVALID_APPWIDGET_ID);
+		}
+
+		mDesign = SettingsStore.get(this).getDesign(mAppWidgetId);
+		mNames = getResources().getStringArray(R.array.design_names);
+		mThumbnails = new DesignThumbnails(this);
+		setListAdapter(new DesignAdapter());
+	}
+
+	protected void onDestroy() {
+		super.onDestroy();
+		mThumbnails.shutdown();
+	}
+
+	protected void onListItemClick(ListView l, View v, int position, long id) {
+		mDesign = DESIGNS[position];
+		SettingsStore.getInstance(this).edit().setDesign(mAppWidgetId, mDesign).apply();
+		BatteryService.requestWidgetUpdate(this);
+		finish();
+	}
+
+	/**
+	 * Returns position of given design in the design_names array.
+	 */
+	static int getPosition(int design) {
+		for (int i = 0; i < DESIGNS.length; i++) {
+			if (DESIGNS[i] == design) {
+				return i;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+/**
+ * Thumbnails of the designs, each showing one design at several charge
+ * levels side by side. Thumbnails are drawn once on a background thread
+ * from the widget layout and kept as PNG files in the cache directory, keyed
+ * by design, application version and screen density.
+ */
+public class DesignThumbnails {
+
+	private static final int[] LEVELS = { 10, 40, 70, 100 };
+	private static final boolean[] CHARGING = { false, false, true, false };
+	private static final String PREFIX = "design-";
+
+	private final Context mContext;
+	private final Handler mHandler = new Handler();
+	private final ExecutorService mExecutor;
+	private final String mSuffix;
+	private final int mDensity;
+
+	// main thread only
+	private final Bitmap[] mThumbnails = new Bitmap[BatteryWidget.DESIGN_SCALABLE + 1];
+
+	private class LoadTask implements Runnable {
+		final ImageView view;
+		final int design;
+
+		LoadTask(ImageView view, int design) {
+			this.view = view;
+			this.design = design;
+		}
+
+		public void run() {
+			final Bitmap thumbnail = load(design);
+			mHandler.post(new Runnable() {
+				public void run() {
+					mThumbnails[design] = thumbnail;
+					if (view.getTag() == LoadTask.this) { // still showing the same design
+						view.setTag(null);
+						view.setImageBitmap(thumbnail);
+					}
+				}
+			});
+		}
+	}
+
+	public DesignThumbnails(Context context) {
+		mContext = context;
+		DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+		mDensity = BatteryWidget.getDensityDpi(metrics);
+		int versionCode = 0;
+		try {
+			versionCode = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+		} catch (NameNotFoundException e) {
+			// cannot happen for own package
+		}
+		mSuffix = "-" + versionCode + "-" + mDensity + ".png";
+		mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(final Runnable r) {
+				return new Thread(new Runnable() {
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						r.run();
+					}
+				}, "design-thumbnails");
+			}
+		});
+		mExecutor.execute(new Runnable() {
+			public void run() {
+				deleteStale();
+			}
+		});
+	}
+
+	/**
+	 * Binds thumbnail of given design to given view, asynchronously if it is
+	 * not loaded yet. Must be called from the main thread.
+	 */
+	public void bind(ImageView view, int design) {
+		Object tag = view.getTag();
+		if (tag instanceof LoadTask && ((LoadTask) tag).design == design) {
+			return; // already loading
+		}
+		if (mThumbnails[design] != null) {
+			view.setTag(null);
+			view.setImageBitmap(mThumbnails[design]);
+		} else {
+			LoadTask task = new LoadTask(view, design);
+			view.setTag(task);
+			view.setImageDrawable(null);
+			mExecutor.execute(task);
+		}
+	}
+
+	public void shutdown() {
+		mExecutor.shutdownNow();
+	}
+
+	/**
+	 * Shows given design at given level in a view inflated from the
+	 * battery_appearance layout.
+	 */
+	static void bindPreview(View appearance, int design, int chargeLevel, boolean charging, WidgetRenderer renderer) {
+		ImageView battery = (ImageView) appearance.findViewById(R.id.battery);
+		View lightning = appearance.findViewById(R.id.lightning);
+		TextView capacityCenter = (TextView) appearance.findViewById(R.id.capacity_center);
+		TextView capacityRightBottom = (TextView) appearance.findViewById(R.id.capacity_right_bottom);
+
+		if (design == BatteryWidget.DESIGN_SCALABLE) { // drawn into the bitmap
+			DisplayMetrics metrics = appearance.getResources().getDisplayMetrics();
+			battery.setImageBitmap(renderer.getBitmap(design, chargeLevel, charging,
+					Math.round(BatteryWidget.DEFAULT_BATTERY_WIDTH * metrics.density),
+					Math.round(BatteryWidget.DEFAULT_BATTERY_HEIGHT * metrics.density),
+					BatteryWidget.getDensityDpi(metrics)));
+			lightning.setVisibility(View.GONE);
+			capacityCenter.setVisibility(View.GONE);
+			capacityRightBottom.setVisibility(View.GONE);
+			return;
+		}
+
+		battery.setImageResource(IconTable.getIcon(design, chargeLevel));
+		lightning.setVisibility(charging ? View.VISIBLE : View.GONE);
+
+		TextView capacity = capacityRightBottom;
+		if (BatteryWidget.isCapacityRightBottom(design)) {
+			capacityCenter.setVisibility(View.GONE);
+		} else {
+			capacityRightBottom.setVisibility(View.GONE);
+			capacity = capacityCenter;
+		}
+		capacity.setText(RenderConfig.getLevelText(chargeLevel));
+		capacity.setVisibility(chargeLevel < 100 ? View.VISIBLE : View.GONE);
+	}
+
+	private Bitmap load(int design) {
+		File file = new File(mContext.getCacheDir(), PREFIX + design + mSuffix);
+		if (file.exists()) {
+			Bitmap thumbnail = BitmapFactory.decodeFile(file.getPath());
+			if (thumbnail != null) {
+				BatteryWidget.setDensity(thumbnail, mDensity);
+				return thumbnail;
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		Bitmap thumbnail = render(design);
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			thumbnail.compress(Bitmap.CompressFormat.PNG, 100, out);
+		} catch (IOException e) {
+			Log.e(TAG, "cannot cache design thumbnail", e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		Log.d(TAG, "design " + design + " thumbnail rendered in " + (System.currentTimeMillis() - start) + " ms");
+		return thumbnail;
+	}
+
+	private Bitmap render(int design) {
+		LayoutInflater inflater = LayoutInflater.from(mContext);
+		WidgetRenderer renderer = new WidgetRenderer();
+		View[] views = new View[LEVELS.length];
+		int spec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+		int width = 0;
+		int height = 0;
+		for (int i = 0; i < LEVELS.length; i++) {
+			View view = inflater.inflate(R.layout.battery_appearance, null);
+			bindPreview(view, design, LEVELS[i], CHARGING[i], renderer);
+			view.measure(spec, spec);
+			view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+			width += view.getMeasuredWidth();
+			height = Math.max(height, view.getMeasuredHeight());
+			views[i] = view;
+		}
+
+		Bitmap thumbnail = Bitmap.createBitmap(Math.max(width, 1), Math.max(height, 1), Bitmap.Config.ARGB_8888);
+		BatteryWidget.setDensity(thumbnail, mDensity);
+		Canvas canvas = new Canvas(thumbnail);
+		for (View view : views) {
+			view.draw(canvas);
+			canvas.translate(view.getWidth(), 0);
+		}
+		renderer.clear();
+		return thumbnail;
+	}
+
+	private void deleteStale() {
+		File[] files = mContext.getCacheDir().listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(PREFIX) && !name.endsWith(mSuffix)) {
+				file.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.SDK_VERSION;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+/**
+ * Battery history chart. Samples are decimated to one min/max pair per pixel
+ * column and drawn into a reused bitmap on a background thread; the view only
+ * draws the finished frame. Memory used is bounded by the view size.
+ * <p>
+ * Dragging pans the chart, pinching zooms it on Android 2.2 and later, older
+ * versions have no scale gestures and show the default span.
+ */
+public class HistoryChartView extends View implements Handler.Callback {
+
+	private static final int MSG_RENDER = 1;
+
+	private static final long MIN_SPAN = 60 * 60 * 1000L; // 1 hour
+	private static final long MAX_SPAN = 366 * 24 * 60 * 60 * 1000L; // 1 year
+	private static final long DEFAULT_SPAN = 24 * 60 * 60 * 1000L; // 1 day
+
+	// use raw samples up to this span, rollups above it
+	private static final long RAW_SPAN = 2 * 24 * 60 * 60 * 1000L;
+	private static final long HOURS_SPAN = 60 * 24 * 60 * 60 * 1000L;
+
+	private static final int MAX_BUCKETS = 62 * 24;
+
+	private final HandlerThread mRenderThread;
+	private final Handler mRenderHandler;
+	private final ScaleSupport mScaleSupport; // null before 2.2
+	private final Paint mPaint = new Paint();
+
+	// visible range, written on the UI thread
+	private volatile long mTo;
+	private volatile long mSpan = DEFAULT_SPAN;
+	private boolean mFollowNow = true;
+	private float mLastX;
+
+	// guarded by this
+	private Bitmap mFront;
+
+	// render thread only
+	private Bitmap mBack;
+	private Canvas mCanvas;
+	private int[] mMin;
+	private int[] mMax;
+	private int[] mCharging;
+	private long[] mBucketTime;
+	private int[] mBucketMin;
+	private int[] mBucketMax;
+	private float[] mBucketMean;
+	private float[] mBucketCharging;
+	private HistoryLog mLog;
+	private RollupIndex mRollups;
+
+	public HistoryChartView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+		mRenderThread = new HandlerThread("history-chart");
+		mRenderThread.start();
+		mRenderHandler = new Handler(mRenderThread.getLooper(), this);
+		mScaleSupport = SDK_VERSION >= 8 ? new ScaleSupport(context) : null;
+	}
+
+	/**
+	 * Pinch zoom, loaded on Android 2.2 and later only since older versions
+	 * have no ScaleGestureDetector. Only this class and its listener refer
+	 * to it, the view itself must not or it fails verification there.
+	 */
+	private final class ScaleSupport {
+		private final ScaleGestureDetector mDetector;
+
+		ScaleSupport(Context context) {
+			mDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+				public boolean onScale(ScaleGestureDetector detector) {
+					long span = (long) (mSpan / detector.getScaleFactor());
+					mSpan = Math.max(MIN_SPAN, Math.min(MAX_SPAN, span));
+					requestRender();
+					return true;
+				}
+			});
+		}
+
+		/**
+		 * Feeds given event to the detector, returns whether a scale gesture
+		 * is in progress.
+		 */
+		boolean onTouchEvent(MotionEvent event) {
+			mDetector.onTouchEvent(event);
+			return mDetector.isInProgress();
+		}
+	}
+
+	/**
+	 * Stops the render thread. The view cannot be used afterwards.
+	 */
+	public void release() {
+		mRenderThread.quit();
+	}
+
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		requestRender();
+	}
+
+	protected void onDraw(Canvas canvas) {
+		synchronized (this) {
+			if (mFront != null) {
+				canvas.drawBitmap(mFront, 0, 0, null);
+			}
+		}
+	}
+
+	public boolean onTouchEvent(MotionEvent event) {
+		boolean scaling = mScaleSupport != null && mScaleSupport.onTouchEvent(event);
+		int action = event.getAction();
+		if (SDK_VERSION >= 5) {
+			action &= MotionEvent.ACTION_MASK; // strip the pointer index of multi-touch events
+		}
+		switch (action) {
+			case MotionEvent.ACTION_DOWN:
+				mLastX = event.getX();
+				return true;
+			case MotionEvent.ACTION_MOVE:
+				if (!scaling && getWidth() > 0) {
+					float dx = event.getX() - mLastX;
+					long now = System.currentTimeMillis();
+					long to = mTo - (long) (dx * mSpan / getWidth());
+					mFollowNow = to >= now;
+					mTo = mFollowNow ? now : to;
+					requestRender();
+				}
+				mLastX = event.getX();
+				return true;
+		}
+		return super.onTouchEvent(event);
+	}
+
+	/**
+	 * Schedules a new frame, pending frames are dropped.
+	 */
+	public void requestRender() {
+		if (mFollowNow) {
+			mTo = System.currentTimeMillis();
+		}
+		mRenderHandler.removeMessages(MSG_RENDER);
+		mRenderHandler.sendMessage(mRenderHandler.obtainMessage(MSG_RENDER, getWidth(), getHeight()));
+	}
+
+	public boolean handleMessage(Message msg) {
+		if (msg.what == MSG_RENDER && msg.arg1 > 0 && msg.arg2 > 0) {
+			render(msg.arg1, msg.arg2);
+			postInvalidate();
+		}
+		return true;
+	}
+
+	private void render(int width, int height) {
+		if (mLog == null) {
+			mLog = HistoryLog.getInstance(getContext());
+			mRollups = RollupIndex.getInstance(getContext());
+			mBucketTime = new long[MAX_BUCKETS];
+			mBucketMin = new int[MAX_BUCKETS];
+			mBucketMax = new int[MAX_BUCKETS];
+			mBucketMean = new float[MAX_BUCKETS];
+			mBucketCharging = new float[MAX_BUCKETS];
+		}
+		if (mBack == null || mBack.getWidth() != width || mBack.getHeight() != height) {
+			if (mBack != null) {
+				mBack.recycle();
+			}
+			mBack = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+			mCanvas = new Canvas(mBack);
+			mMin = new int[width];
+			mMax = new int[width];
+			mCharging = new int[width];
+		}
+
+		long to = mTo;
+		long span = mSpan;
+		decimate(to - span, to, width);
+		draw(mCanvas, width, height);
+
+		// publish the frame
+		synchronized (this) {
+			Bitmap front = mFront;
+			mFront = mBack;
+			mBack = front;
+		}
+		if (mBack != null) {
+			mCanvas.setBitmap(mBack);
+		} else {
+			mCanvas = null;
+		}
+	}
+
+	private void decimate(long from, long to, int width) {
+		int[] min = mMin;
+		int[] max = mMax;
+		int[] charging = mCharging;
+		for (int i = 0; i < width; i++) {
+			min[i] = Integer.MAX_VALUE;
+			max[i] = Integer.MIN_VALUE;
+			charging[i] = 0;
+		}
+
+		long span = to - from;
+		if (span <= RAW_SPAN && mLog != null) {
+			HistoryLog log = mLog;
+			int size = log.size();
+			for (int i = log.findIndex(from); i < size; i++) {
+				long time = log.getTime(i);
+				if (time >= to) {
+					break;
+				}
+				int level = log.getLevel(i);
+				add((int) ((time - from) * width / span), level, level,
+						log.getPlugged(i) > 0 && level < 100);
+			}
+		} else if (mRollups != null) {
+			int resolution = span <= HOURS_SPAN ? RollupIndex.HOURS : RollupIndex.DAYS;
+			int n = mRollups.query(resolution, from, to, mBucketTime, mBucketMin, mBucketMax, mBucketMean,
+					mBucketCharging);
+			for (int i = 0; i < n; i++) {
+				long time = Math.max(mBucketTime[i], from);
+				add((int) ((time - from) * width / span), mBucketMin[i], mBucketMax[i], mBucketCharging[i] > 0.5f);
+			}
+		}
+	}
+
+	private void add(int column, int min, int max, boolean charging) {
+		if (column < 0 || column >= mMin.length) {
+			return;
+		}
+		if (min < mMin[column]) {
+			mMin[column] = min;
+		}
+		if (max > mMax[column]) {
+			mMax[column] = max;
+		}
+		if (charging) {
+			mCharging[column]++;
+		}
+	}
+
+	private void draw(Canvas canvas, int width, int height) {
+		Paint paint = mPaint;
+		canvas.drawColor(Color.BLACK);
+
+		// grid
+		paint.setColor(Color.DKGRAY);
+		canvas.drawLine(0, 0, width, 0, paint);
+		canvas.drawLine(0, height / 2, width, height / 2, paint);
+		canvas.drawLine(0, height - 1, width, height - 1, paint);
+
+		// levels
+		int lastLevel = -1;
+		for (int x = 0; x < width; x++) {
+			if (mMax[x] < 0) {
+				continue; // no samples
+			}
+			int min = mMin[x];
+			int max = mMax[x];
+			if (lastLevel >= 0) {
+				// connect to previous column
+				min = Math.min(min, lastLevel);
+				max = Math.max(max, lastLevel);
+			}
+			lastLevel = mMin[x];
+			paint.setColor(mCharging[x] > 0 ? 0xFF33B5E5 : 0xFF99CC00);
+			float top = (height - 1) * (100 - max) / 100f;
+			float bottom = (height - 1) * (100 - min) / 100f;
+			canvas.drawLine(x, top, x, bottom + 1, paint);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Battery history stored as fixed-width records in a memory-mapped ring
+ * buffer file. A record is written first and the write counter in the header
+ * is advanced afterwards, so a crash loses at most the last sample but never
+ * leaves a half-written record visible. Samples are appended from the main
+ * thread; reading is allowed from any thread. Times never go back, so that
+ * samples stay sorted by time when the wall clock is set back.
+ *
+ * <pre>
+ * header (64 bytes): magic, version, record size, capacity, written count, technology
+ * record (16 bytes): time, level, status, health, plugged, temperature, voltage
+ * </pre>
+ */
+public class HistoryLog {
+
+	public static final String FILE_NAME = "history.log";
+
+	public static final int CAPACITY = 1 << 17; // ~3 weeks of screen-on samples
+
+	private static final int MAGIC = 0x42574831; // "BWH1"
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 64;
+	private static final int RECORD_SIZE = 16;
+
+	// header offsets
+	private static final int H_MAGIC = 0;
+	private static final int H_VERSION = 4;
+	private static final int H_RECORD_SIZE = 6;
+	private static final int H_CAPACITY = 8;
+	private static final int H_WRITTEN = 16;
+	private static final int H_TECHNOLOGY = 24;
+	private static final int TECHNOLOGY_SIZE = 16;
+
+	// record offsets
+	private static final int R_TIME = 0;
+	private static final int R_LEVEL = 8;
+	private static final int R_STATUS = 9;
+	private static final int R_HEALTH = 10;
+	private static final int R_PLUGGED = 11;
+	private static final int R_TEMPERATURE = 12;
+	private static final int R_VOLTAGE = 14;
+
+	private static HistoryLog sInstance;
+
+	private final MappedByteBuffer mBuffer;
+	private final int mCapacity;
+	private volatile long mWritten;
+	private long mLastTime; // of the last record, main thread only
+	private String mTechnology;
+
+	HistoryLog(File file, int capacity) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+			raf.setLength(size);
+			mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			// mapping stays valid after the channel is closed
+			raf.close();
+		}
+		mCapacity = capacity;
+
+		if (mBuffer.getInt(H_MAGIC) != MAGIC || mBuffer.getShort(H_VERSION) != VERSION
+				|| mBuffer.getShort(H_RECORD_SIZE) != RECORD_SIZE || mBuffer.getInt(H_CAPACITY) != capacity) {
+			// new or incompatible file, start from scratch
+			for (int i = 0; i < HEADER_SIZE; i++) {
+				mBuffer.put(i, (byte) 0);
+			}
+			mBuffer.putShort(H_VERSION, (short) VERSION);
+			mBuffer.putShort(H_RECORD_SIZE, (short) RECORD_SIZE);
+			mBuffer.putInt(H_CAPACITY, capacity);
+			mBuffer.putLong(H_WRITTEN, 0);
+			mBuffer.putInt(H_MAGIC, MAGIC);
+			Log.d(TAG, "history log created");
+		}
+		mWritten = mBuffer.getLong(H_WRITTEN);
+		if (mWritten > 0) {
+			mLastTime = getTime(size() - 1);
+		}
+	}
+
+	/**
+	 * Returns the history log shared within the process or null if it cannot
+	 * be opened.
+	 */
+	public static synchronized HistoryLog getInstance(Context context) {
+		if (sInstance == null) {
+			File file = new File(context.getFilesDir(), FILE_NAME);
+			try {
+				sInstance = new HistoryLog(file, CAPACITY);
+			} catch (IOException e) {
+				Log.e(TAG, "cannot open history log", e);
+			}
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Appends a sample and returns the time stored with it, which is the time
+	 * of the last sample if given one is older.
+	 */
+	public long append(long time, int level, int status, int health, int plugged, int temperature, int voltage,
+			String technology) {
+
+		if (time < mLastTime) {
+			time = mLastTime; // clock went back
+		}
+		mLastTime = time;
+
+		long written = mWritten;
+		int offset = HEADER_SIZE + (int) (written % mCapacity) * RECORD_SIZE;
+
+		MappedByteBuffer buffer = mBuffer;
+		buffer.putLong(offset + R_TIME, time);
+		buffer.put(offset + R_LEVEL, (byte) level);
+		buffer.put(offset + R_STATUS, (byte) status);
+		buffer.put(offset + R_HEALTH, (byte) health);
+		buffer.put(offset + R_PLUGGED, (byte) plugged);
+		buffer.putShort(offset + R_TEMPERATURE, (short) temperature);
+		buffer.putShort(offset + R_VOLTAGE, (short) voltage);
+
+		// publish record
+		buffer.putLong(H_WRITTEN, written + 1);
+		mWritten = written + 1;
+
+		if (technology != null && !technology.equals(mTechnology)) {
+			setTechnology(technology);
+		}
+		return time;
+	}
+
+	/**
+	 * Flushes written records to the storage.
+	 */
+	public void flush() {
+		mBuffer.force();
+	}
+
+	/**
+	 * Returns number of samples available, oldest sample has index 0.
+	 */
+	public int size() {
+		long written = mWritten;
+		return written < mCapacity ? (int) written : mCapacity;
+	}
+
+	/**
+	 * Returns total number of samples ever written.
+	 */
+	public long getWrittenCount() {
+		return mWritten;
+	}
+
+	public long getTime(int index) {
+		return mBuffer.getLong(offset(index) + R_TIME);
+	}
+
+	public int getLevel(int index) {
+		return mBuffer.get(offset(index) + R_LEVEL);
+	}
+
+	public int getStatus(int index) {
+		return mBuffer.get(offset(index) + R_STATUS);
+	}
+
+	public int getHealth(int index) {
+		return mBuffer.get(offset(index) + R_HEALTH);
+	}
+
+	public int getPlugged(int index) {
+		return mBuffer.get(offset(index) + R_PLUGGED);
+	}
+
+	public int getTemperature(int index) {
+		return mBuffer.getShort(offset(index) + R_TEMPERATURE);
+	}
+
+	public int getVoltage(int index) {
+		return mBuffer.getShort(offset(index) + R_VOLTAGE);
+	}
+
+	/**
+	 * Returns index of the first sample with time not less than given one.
+	 */
+	public int findIndex(long time) {
+		int low = 0;
+		int high = size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (getTime(mid) < time) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	public String getTechnology() {
+		if (mTechnology == null) {
+			StringBuilder technology = new StringBuilder(TECHNOLOGY_SIZE);
+			for (int i = 0; i < TECHNOLOGY_SIZE; i++) {
+				byte b = mBuffer.get(H_TECHNOLOGY + i);
+				if (b == 0) {
+					break;
+				}
+				technology.append((char) b);
+			}
+			mTechnology = technology.toString();
+		}
+		return mTechnology;
+	}
+
+	private void setTechnology(String technology) {
+		int length = Math.min(technology.length(), TECHNOLOGY_SIZE);
+		for (int i = 0; i < TECHNOLOGY_SIZE; i++) {
+			mBuffer.put(H_TECHNOLOGY + i, i < length ? (byte) technology.charAt(i) : 0);
+		}
+		mTechnology = technology;
+	}
+
+	private int offset(int index) {
+		long written = mWritten;
+		long first = written < mCapacity ? 0 : written - mCapacity;
+		return HEADER_SIZE + (int) ((first + index) % mCapacity) * RECORD_SIZE;
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.ComponentName;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Process;
+import android.widget.ImageView;
+
+/**
+ * Loads activity icons on a small worker pool and keeps them in an LRU cache
+ * bounded by byte size. Loading for a recycled view is cancelled and a result
+ * is bound only if the view still shows the activity it was loaded for.
+ * Labels come from {@link ActivityIndex} and need no loading.
+ */
+public class IconLoader {
+
+	private static final int THREADS = 2;
+
+	private final PackageManager mPackageManager;
+	private final Drawable mDefaultIcon;
+	private final Handler mHandler = new Handler();
+	private final ExecutorService mExecutor;
+
+	// guarded by itself
+	private final LinkedHashMap<String, Drawable> mCache = new LinkedHashMap<String, Drawable>(32, 0.75f, true);
+	private final int mMaxBytes;
+	private int mBytes;
+
+	private class LoadTask implements Runnable {
+		final ImageView view;
+		final String key;
+		final ActivityIndex.Entry entry;
+		Future<?> future;
+
+		LoadTask(ImageView view, String key, ActivityIndex.Entry entry) {
+			this.view = view;
+			this.key = key;
+			this.entry = entry;
+		}
+
+		public void run() {
+			Drawable icon;
+			try {
+				icon = mPackageManager.getActivityIcon(new ComponentName(entry.packageName, entry.className));
+			} catch (NameNotFoundException e) {
+				icon = mDefaultIcon;
+			}
+			put(key, icon);
+
+			final Drawable result = icon;
+			mHandler.post(new Runnable() {
+				public void run() {
+					if (view.getTag() == LoadTask.this) { // still showing the same activity
+						view.setTag(null);
+						view.setImageDrawable(newDrawable(result));
+					}
+				}
+			});
+		}
+	}
+
+	public IconLoader(PackageManager packageManager, int maxBytes) {
+		mPackageManager = packageManager;
+		mDefaultIcon = packageManager.getDefaultActivityIcon();
+		mMaxBytes = maxBytes;
+		mExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+			public Thread newThread(final Runnable r) {
+				return new Thread(new Runnable() {
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						r.run();
+					}
+				}, "icon-loader");
+			}
+		});
+	}
+
+	/**
+	 * Binds icon of given activity to given view, asynchronously if the icon
+	 * is not cached. Must be called from the main thread.
+	 */
+	public void bind(ImageView view, ActivityIndex.Entry entry) {
+		Object tag = view.getTag();
+		if (tag instanceof LoadTask) {
+			LoadTask task = (LoadTask) tag;
+			if (task.entry == entry) {
+				return; // already loading
+			}
+			task.future.cancel(false);
+		}
+
+		String key = entry.packageName + "/" + entry.className;
+		Drawable icon;
+		synchronized (mCache) {
+			icon = mCache.get(key);
+		}
+
+		if (icon != null) {
+			view.setTag(null);
+			view.setImageDrawable(newDrawable(icon));
+		} else {
+			LoadTask task = new LoadTask(view, key, entry);
+			view.setTag(task);
+			view.setImageDrawable(mDefaultIcon);
+			task.future = mExecutor.submit(task);
+		}
+	}
+
+	/**
+	 * Stops loading. The loader cannot be used afterwards.
+	 */
+	public void shutdown() {
+		mExecutor.shutdownNow();
+		synchronized (mCache) {
+			mCache.clear();
+			mBytes = 0;
+		}
+	}
+
+	private void put(String key, Drawable icon) {
+		synchronized (mCache) {
+			Drawable old = mCache.put(key, icon);
+			if (old != null) {
+				mBytes -= getByteCount(old);
+			}
+			mBytes += getByteCount(icon);
+
+			// drop least recently used icons
+			Iterator<Map.Entry<String, Drawable>> it = mCache.entrySet().iterator();
+			while (mBytes > mMaxBytes && it.hasNext()) {
+				mBytes -= getByteCount(it.next().getValue());
+				it.remove();
+			}
+		}
+	}
+
+	private static Drawable newDrawable(Drawable icon) {
+		// drawables keep view specific state, share only the constant state
+		Drawable.ConstantState state = icon.getConstantState();
+		return state == null ? icon : state.newDrawable();
+	}
+
+	private static int getByteCount(Drawable icon) {
+		if (icon instanceof BitmapDrawable) {
+			Bitmap bitmap = ((BitmapDrawable) icon).getBitmap();
+			if (bitmap != null) {
+				return bitmap.getRowBytes() * bitmap.getHeight();
+			}
+		}
+		return Math.max(icon.getIntrinsicWidth(), 1) * Math.max(icon.getIntrinsicHeight(), 1) * 4;
+	}
+}
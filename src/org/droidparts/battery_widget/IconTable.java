@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+/**
+ * Battery drawable for every design and charge level, looked up directly
+ * instead of letting the launcher search a level-list. A new design is a new
+ * row of ranges, indexed by the design number. The ranges are made from the
+ * level-list in res/xml/charge_level_icons.xml, the JVM tests check that
+ * both still agree.
+ */
+public class IconTable {
+
+	private static final int LEVELS = 101;
+
+	// {max level, drawable} pairs per design, in level order
+	private static final int[][] RANGES = {
+		/* DESIGN_COOL */ {
+			1, R.drawable.ic_1_6,
+			15, R.drawable.ic_2_5_2,
+			20, R.drawable.ic_2_5_1,
+			30, R.drawable.ic_2_4_2,
+			40, R.drawable.ic_2_4_1,
+			60, R.drawable.ic_2_3,
+			80, R.drawable.ic_2_2,
+			100, R.drawable.ic_2_1 },
+		/* DESIGN_AWFUL */ {
+			1, R.drawable.ic_1_6,
+			15, R.drawable.ic_1_5_2,
+			20, R.drawable.ic_1_5_1,
+			30, R.drawable.ic_1_4_2,
+			40, R.drawable.ic_1_4_1,
+			60, R.drawable.ic_1_3,
+			80, R.drawable.ic_1_2,
+			100, R.drawable.ic_1_1 },
+		/* DESIGN_AWFULLY_COOL */ {
+			1, R.drawable.ic_1_6,
+			15, R.drawable.ic_1_5_2,
+			20, R.drawable.ic_1_5_1,
+			30, R.drawable.ic_1_4_2,
+			40, R.drawable.ic_1_4_1,
+			60, R.drawable.ic_1_3,
+			80, R.drawable.ic_1_2,
+			100, R.drawable.ic_1_1 },
+		/* DESIGN_COLORFULL */ {
+			7, R.drawable.ic_1_6,
+			20, R.drawable.ic_2_5_2,
+			40, R.drawable.ic_3_4_1,
+			60, R.drawable.ic_3_3,
+			80, R.drawable.ic_3_2,
+			100, R.drawable.ic_3_1 },
+	};
+
+	// design * LEVELS + level -> drawable
+	private static final int[] sTable = new int[RANGES.length * LEVELS];
+
+	static {
+		for (int design = 0; design < RANGES.length; design++) {
+			int[] ranges = RANGES[design];
+			int level = 0;
+			for (int i = 0; i < ranges.length; i += 2) {
+				for (; level <= ranges[i]; level++) {
+					sTable[design * LEVELS + level] = ranges[i + 1];
+				}
+			}
+		}
+	}
+
+	private IconTable() {
+	}
+
+	/**
+	 * Returns drawable resource for given design and charge level. Unknown
+	 * designs fall back to the first one, levels are clamped to 0..100.
+	 */
+	public static int getIcon(int design, int chargeLevel) {
+		if (design < 0 || design >= RANGES.length) {
+			design = 0;
+		}
+		if (chargeLevel < 0) {
+			chargeLevel = 0;
+		} else if (chargeLevel >= LEVELS) {
+			chargeLevel = LEVELS - 1;
+		}
+		return sTable[design * LEVELS + chargeLevel];
+	}
+}
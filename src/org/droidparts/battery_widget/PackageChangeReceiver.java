@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.SDK_VERSION;
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.util.Log;
+
+/**
+ * Keeps {@link ActivityIndex} in sync with installed packages. The index is
+ * patched on a background thread, one package after another in broadcast
+ * order. From Android 3.0 on the broadcast is kept pending until the patch
+ * is written. Older versions rely on the process being kept for the running
+ * service.
+ */
+public class PackageChangeReceiver extends BroadcastReceiver {
+
+	private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+	// BroadcastReceiver.goAsync(), API level 11
+	private static Method sGoAsync;
+	private static Method sFinish;
+	static {
+		if (SDK_VERSION >= 11) {
+			try {
+				sGoAsync = BroadcastReceiver.class.getMethod("goAsync");
+				sFinish = sGoAsync.getReturnType().getMethod("finish");
+			} catch (Exception e) {
+				Log.e(TAG, "cannot find goAsync", e);
+			}
+		}
+	}
+
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		Uri data = intent.getData();
+		if (data == null) {
+			return;
+		}
+		final String packageName = data.getSchemeSpecificPart();
+		final boolean removed;
+		if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())) {
+			if (intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+				return; // package gets added again
+			}
+			removed = true;
+		} else {
+			removed = false;
+		}
+
+		final Context appContext = context.getApplicationContext();
+		final Object pendingResult = goAsync(this);
+		sExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					ActivityIndex.update(appContext, packageName, removed);
+				} finally {
+					finish(pendingResult);
+				}
+			}
+		});
+	}
+
+	private static Object goAsync(BroadcastReceiver receiver) {
+		if (sGoAsync == null) {
+			return null;
+		}
+		try {
+			return sGoAsync.invoke(receiver);
+		} catch (Exception e) {
+			Log.e(TAG, "cannot keep broadcast pending", e);
+			return null;
+		}
+	}
+
+	private static void finish(Object pendingResult) {
+		if (pendingResult == null) {
+			return;
+		}
+		try {
+			sFinish.invoke(pendingResult);
+		} catch (Exception e) {
+			Log.e(TAG, "cannot finish broadcast", e);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+/**
+ * Tells {@link ChargingSessions} the exact time the charger got plugged in
+ * or out. Declared in the manifest, so it runs even while the service is
+ * stopped or does not listen to battery broadcasts with the screen off.
+ * Both broadcasts exist since Android 1.6 and never arrive on 1.5, where
+ * sessions still follow the battery samples of the service.
+ */
+public class PowerConnectionReceiver extends BroadcastReceiver {
+
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		long now = System.currentTimeMillis();
+
+		// receivers are not allowed to register even a null receiver
+		IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+		Intent battery = context.getApplicationContext().registerReceiver(null, filter);
+		if (battery == null) {
+			return;
+		}
+		int level = BatteryService.getChargeLevel(battery);
+
+		ChargingSessions sessions = ChargingSessions.getInstance(context);
+		if (Intent.ACTION_POWER_CONNECTED.equals(intent.getAction())) {
+			// the sticky intent may not know the plug type yet
+			sessions.onPowerConnected(now, level, battery.getIntExtra("plugged", 0));
+		} else if (Intent.ACTION_POWER_DISCONNECTED.equals(intent.getAction())) {
+			sessions.onPowerDisconnected(now, level);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prefix index over lower-case labels. Every label is indexed from its start
+ * and from the start of every following word, the keys are kept in a sorted
+ * array and a prefix query is a range search in it. Narrowing a query by
+ * typing more characters searches only inside the previous range.
+ */
+public class PrefixIndex {
+
+	private final String[] mKeys;
+	private final int[] mItems;
+
+	// last query, used to narrow the next one
+	private String mQuery = "";
+	private int mStart;
+	private int mEnd;
+
+	private static class Key implements Comparable<Key> {
+		final String key;
+		final int item;
+
+		Key(String key, int item) {
+			this.key = key;
+			this.item = item;
+		}
+
+		public int compareTo(Key another) {
+			return key.compareTo(another.key);
+		}
+	}
+
+	/**
+	 * Creates index over given lower-case labels, item numbers are positions
+	 * in the list.
+	 */
+	public PrefixIndex(List<String> labels) {
+		ArrayList<Key> keys = new ArrayList<Key>(labels.size() * 2);
+		for (int item = 0; item < labels.size(); item++) {
+			String label = labels.get(item);
+			boolean wordStart = true;
+			for (int i = 0; i < label.length(); i++) {
+				boolean letter = Character.isLetterOrDigit(label.charAt(i));
+				if (letter && wordStart) {
+					keys.add(new Key(label.substring(i), item));
+				}
+				wordStart = !letter;
+			}
+		}
+
+		Key[] sorted = keys.toArray(new Key[keys.size()]);
+		Arrays.sort(sorted);
+		mKeys = new String[sorted.length];
+		mItems = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			mKeys[i] = sorted[i].key;
+			mItems[i] = sorted[i].item;
+		}
+		mEnd = mKeys.length;
+	}
+
+	/**
+	 * Finds keys starting with given lower-case prefix and returns their
+	 * number. Matching items are then available through
+	 * {@link #getMatch(int)}; an item may match more than once.
+	 */
+	public int find(String prefix) {
+		int from = 0;
+		int to = mKeys.length;
+		if (prefix.startsWith(mQuery)) {
+			// typed further, matches are inside the last range
+			from = mStart;
+			to = mEnd;
+		}
+		mStart = lowerBound(prefix, from, to);
+		int end = mStart;
+		while (end < to && mKeys[end].startsWith(prefix)) {
+			end++;
+		}
+		mEnd = end;
+		mQuery = prefix;
+		return mEnd - mStart;
+	}
+
+	public int getMatch(int index) {
+		return mItems[mStart + index];
+	}
+
+	private int lowerBound(String prefix, int from, int to) {
+		int low = from;
+		int high = to - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (mKeys[mid].compareTo(prefix) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+/**
+ * Streaming time-to-empty and time-to-full estimator. Keeps an exponentially
+ * weighted moving average of the discharge and of the charge rate, both
+ * updated in constant time and memory whenever the level changes. Plugging
+ * or unplugging the charger only restarts the current measurement interval,
+ * rates learned before are kept.
+ */
+public class RemainingTimeEstimator {
+
+	public static final int UNKNOWN = -1;
+
+	private static final float DEFAULT_WEIGHT = 0.3f;
+
+	// intervals longer than that are not representative (device was off)
+	private static final long MAX_INTERVAL = 6 * 60 * 60 * 1000L;
+
+	private final float mWeight;
+
+	// levels per millisecond, 0 if not known yet
+	private float mDischargeRate;
+	private float mChargeRate;
+
+	private boolean mCharging;
+	private int mLevel = -1;
+
+	// start of the current measurement interval, 0 if not started yet
+	private long mAnchorTime;
+	private int mAnchorLevel;
+
+	public RemainingTimeEstimator() {
+		this(DEFAULT_WEIGHT);
+	}
+
+	public RemainingTimeEstimator(float weight) {
+		mWeight = weight;
+	}
+
+	/**
+	 * Feeds new sample. Samples must come in time order.
+	 */
+	public void addSample(long time, int level, boolean charging) {
+
+		if (charging != mCharging || level < 0) {
+			// interval measured in another mode is useless
+			mCharging = charging;
+			mLevel = level;
+			mAnchorTime = 0;
+			return;
+		}
+
+		if (level == mLevel) {
+			return;
+		}
+
+		if (mAnchorTime == 0 || time - mAnchorTime > MAX_INTERVAL || time <= mAnchorTime) {
+			// first level change in this mode starts the interval, the
+			// time spent since plugging in is only a part of a level step
+			mAnchorTime = time;
+			mAnchorLevel = level;
+			mLevel = level;
+			return;
+		}
+
+		float rate = (float) (level - mAnchorLevel) / (time - mAnchorTime);
+		if (charging) {
+			if (rate > 0) {
+				mChargeRate = mChargeRate == 0 ? rate : mWeight * rate + (1 - mWeight) * mChargeRate;
+			}
+		} else {
+			if (rate < 0) {
+				rate = -rate;
+				mDischargeRate = mDischargeRate == 0 ? rate : mWeight * rate + (1 - mWeight) * mDischargeRate;
+			}
+		}
+
+		mAnchorTime = time;
+		mAnchorLevel = level;
+		mLevel = level;
+	}
+
+	/**
+	 * Returns remaining minutes until empty, when discharging, or until full,
+	 * when charging. Returns {@link #UNKNOWN} if there is no estimate yet.
+	 */
+	public int getRemainingMinutes() {
+		if (mLevel < 0) {
+			return UNKNOWN;
+		}
+		return mCharging ? getMinutesToFull() : getMinutesToEmpty();
+	}
+
+	public int getMinutesToEmpty() {
+		if (mDischargeRate == 0 || mLevel < 0) {
+			return UNKNOWN;
+		}
+		return (int) (mLevel / mDischargeRate / 60000);
+	}
+
+	public int getMinutesToFull() {
+		if (mChargeRate == 0 || mLevel < 0) {
+			return UNKNOWN;
+		}
+		return (int) ((100 - mLevel) / mChargeRate / 60000);
+	}
+
+	/**
+	 * Returns discharge rate in percent per hour, 0 if unknown.
+	 */
+	public float getDischargeRate() {
+		return mDischargeRate * 3600000;
+	}
+
+	/**
+	 * Returns charge rate in percent per hour, 0 if unknown.
+	 */
+	public float getChargeRate() {
+		return mChargeRate * 3600000;
+	}
+}
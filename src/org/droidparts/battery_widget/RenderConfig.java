@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.PREF_ACTIVITY_NAME;
+import static org.droidparts.battery_widget.BatteryWidget.PREF_CLASS_NAME;
+import static org.droidparts.battery_widget.BatteryWidget.PREF_DESIGN_TYPE;
+import static org.droidparts.battery_widget.BatteryWidget.PREF_PACKAGE_NAME;
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Everything the widget renderer needs from the configuration of a widget
+ * instance, built once and rebuilt only after the relevant preferences have
+ * changed. Instances sharing the same configuration share the same object
+ * and are rendered as one group.
+ * <p>
+ * Instances without an own click target open their own configuration, so
+ * each of them has its own click intent carrying its id. They are grouped by
+ * design all the same: the views are built once per group and only the
+ * click intent is set per instance, see {@link #getClickIntent(int)}.
+ */
+public final class RenderConfig {
+
+	private static final String MIME = "org.droidparts.battery_widget/widget";
+
+	private static final String[] LEVEL_TEXT = new String[101];
+	static {
+		for (int i = 0; i < LEVEL_TEXT.length; i++) {
+			LEVEL_TEXT[i] = i < 10 ? "0" + i : String.valueOf(i);
+		}
+	}
+
+	private static boolean sSubscribed;
+
+	// current groups, null if invalidated; read by the update thread
+	private static volatile RenderConfig[] sGroups;
+	private static volatile int sGeneration;
+
+	private static final SettingsStore.Listener sListener = new SettingsStore.Listener() {
+		public void onSettingsChanged(SettingsStore.Snapshot snapshot, Set<String> keys) {
+			for (String key : keys) {
+				if (key.startsWith(PREF_DESIGN_TYPE) || key.startsWith(PREF_ACTIVITY_NAME)
+						|| key.startsWith(PREF_CLASS_NAME) || key.startsWith(PREF_PACKAGE_NAME)) {
+					invalidate();
+					Log.d(TAG, "render config invalidated by " + key);
+					return;
+				}
+			}
+		}
+	};
+
+	public final int design;
+	public final boolean capacityRightBottom;
+
+	// click intent shared by the group, null if every instance has its own
+	private final PendingIntent mClickIntent;
+
+	// widget instances of this group and their own click intents if any,
+	// set once before the group is published
+	int[] appWidgetIds;
+	private PendingIntent[] mClickIntents;
+
+	private RenderConfig(Context context, int design, String packageName, String className) {
+		this.design = design;
+		capacityRightBottom = BatteryWidget.isCapacityRightBottom(design);
+		mClickIntent = packageName == null || className == null ? null
+				: createClickIntent(context, packageName, className);
+	}
+
+	/**
+	 * Returns whether all instances of this group share the same click
+	 * intent.
+	 */
+	public boolean hasSharedClickIntent() {
+		return mClickIntent != null;
+	}
+
+	/**
+	 * Returns click intent of the instance at given index in
+	 * {@link #appWidgetIds}.
+	 */
+	public PendingIntent getClickIntent(int index) {
+		return mClickIntent != null ? mClickIntent : mClickIntents[index];
+	}
+
+	/**
+	 * Drops cached configurations and widget groups. Called when preferences
+	 * change and when widget instances are added or removed.
+	 */
+	public static synchronized void invalidate() {
+		sGroups = null;
+		sGeneration++;
+	}
+
+	/**
+	 * Returns a number which changes every time the configuration is
+	 * invalidated.
+	 */
+	public static int getGeneration() {
+		return sGeneration;
+	}
+
+	/**
+	 * Returns distinct configurations of all widget instances, each with
+	 * its widget instances. May be called from any thread.
+	 */
+	public static RenderConfig[] getGroups(Context context) {
+		RenderConfig[] groups = sGroups;
+		if (groups == null) {
+			groups = buildGroups(context);
+		}
+		return groups;
+	}
+
+	public static String getLevelText(int chargeLevel) {
+		if (chargeLevel >= 0 && chargeLevel < LEVEL_TEXT.length) {
+			return LEVEL_TEXT[chargeLevel];
+		}
+		return String.valueOf(chargeLevel);
+	}
+
+	public static String getRemainingText(int minutes) {
+		int m = minutes % 60;
+		return (minutes / 60) + (m < 10 ? ":0" : ":") + m;
+	}
+
+	private static RenderConfig[] buildGroups(Context context) {
+		SettingsStore store = SettingsStore.getInstance(context);
+		int generation;
+		synchronized (RenderConfig.class) {
+			if (!sSubscribed) {
+				sSubscribed = true;
+				store.addListener(sListener);
+			}
+			generation = sGeneration;
+		}
+		SettingsStore.Snapshot settings = store.getSnapshot();
+
+		AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
+		int[] appWidgetIds = widgetManager.getAppWidgetIds(new ComponentName(context, BatteryWidgetProvider.class));
+
+		HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+		ArrayList<RenderConfig> groups = new ArrayList<RenderConfig>();
+		ArrayList<ArrayList<Integer>> groupIds = new ArrayList<ArrayList<Integer>>();
+
+		for (int appWidgetId : appWidgetIds) {
+			int design = settings.getDesign(appWidgetId);
+			String packageName = null;
+			String className = null;
+			int id = appWidgetId;
+			if (!settings.hasActivity(id)) {
+				id = AppWidgetManager.INVALID_APPWIDGET_ID; // not configured, use defaults
+			}
+			if (settings.getActivityName(id) != null) {
+				packageName = settings.getPackageName(id);
+				className = settings.getClassName(id);
+			}
+
+			boolean configures = packageName == null || className == null;
+			String key = configures ? design + "/configure" // own configuration of each instance
+					: design + "/" + packageName + "/" + className;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				index = groups.size();
+				indexes.put(key, index);
+				groups.add(new RenderConfig(context, design, packageName, className));
+				groupIds.add(new ArrayList<Integer>());
+			}
+			groupIds.get(index).add(appWidgetId);
+		}
+
+		RenderConfig[] result = groups.toArray(new RenderConfig[groups.size()]);
+		for (int i = 0; i < result.length; i++) {
+			ArrayList<Integer> list = groupIds.get(i);
+			int[] ids = new int[list.size()];
+			for (int j = 0; j < ids.length; j++) {
+				ids[j] = list.get(j);
+			}
+			result[i].appWidgetIds = ids;
+			if (result[i].mClickIntent == null) {
+				PendingIntent[] intents = new PendingIntent[ids.length];
+				for (int j = 0; j < ids.length; j++) {
+					intents[j] = createConfigureIntent(context, ids[j]);
+				}
+				result[i].mClickIntents = intents;
+			}
+		}
+
+		synchronized (RenderConfig.class) {
+			if (generation == sGeneration) { // not invalidated meanwhile
+				sGroups = result;
+			}
+		}
+		Log.d(TAG, appWidgetIds.length + " widgets in " + result.length + " groups");
+		return result;
+	}
+
+	/**
+	 * Returns intent opening configuration of given instance.
+	 */
+	private static PendingIntent createConfigureIntent(Context context, int appWidgetId) {
+		// the request code keeps intents of different instances apart since
+		// extras do not
+		Intent intent = new Intent(Intent.ACTION_VIEW);
+		intent.setType(MIME);
+		intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+		return PendingIntent.getActivity(context, appWidgetId, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+	}
+
+	private static PendingIntent createClickIntent(Context context, String packageName, String className) {
+		Intent intent = new Intent();
+		intent.setClassName(packageName, className);
+		return PendingIntent.getActivity(context, 0, intent, 0);
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Minute, hour and day rollups of the battery history kept as ring arrays
+ * in a memory-mapped file, so that the hour and day rings keep their two
+ * months and one year across process restarts while {@link HistoryLog}
+ * only holds about three weeks. Updated incrementally with every new
+ * sample; range queries read buckets instead of raw samples. Buckets are
+ * aligned to UTC.
+ * <p>
+ * If the file is new or incompatible, the rollups are rebuilt from the
+ * history log on a background thread. Queries made meanwhile see the part
+ * rebuilt so far.
+ *
+ * <pre>
+ * header (32 bytes): magic, version, bucket size, minute, hour and day ring sizes
+ * bucket (24 bytes): bucket number, sum, count, charging count, min, max
+ * </pre>
+ */
+public class RollupIndex {
+
+	public static final String FILE_NAME = "rollups.bin";
+
+	public static final int MINUTES = 0;
+	public static final int HOURS = 1;
+	public static final int DAYS = 2;
+
+	private static final long MINUTE = 60 * 1000L;
+	private static final long HOUR = 60 * MINUTE;
+	private static final long DAY = 24 * HOUR;
+
+	private static final long[] DURATIONS = { MINUTE, HOUR, DAY };
+	private static final int[] SIZES = { 24 * 60, 62 * 24, 366 }; // one day, two months, one year
+
+	private static final int MAGIC = 0x42575231; // "BWR1"
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 32;
+	private static final int BUCKET_SIZE = 24;
+
+	// header offsets
+	private static final int H_MAGIC = 0;
+	private static final int H_VERSION = 4;
+	private static final int H_BUCKET_SIZE = 6;
+	private static final int H_SIZES = 8;
+
+	// bucket offsets
+	private static final int B_NUMBER = 0; // -1 if empty
+	private static final int B_SUM = 8;
+	private static final int B_COUNT = 12;
+	private static final int B_CHARGING = 16;
+	private static final int B_MIN = 20;
+	private static final int B_MAX = 21;
+
+	private static final int REBUILD_CHUNK = 1024; // samples per lock
+
+	private static RollupIndex sInstance;
+
+	private final MappedByteBuffer mBuffer;
+	private final Rollup[] mRollups = new Rollup[DURATIONS.length];
+
+	// samples up to this time come from the rebuild, guarded by this
+	private long mRebuiltUntil;
+
+	private static class Rollup {
+		final MappedByteBuffer buffer;
+		final int base;
+		final long duration;
+		final int size;
+
+		Rollup(MappedByteBuffer buffer, int base, long duration, int size) {
+			this.buffer = buffer;
+			this.base = base;
+			this.duration = duration;
+			this.size = size;
+		}
+
+		int offset(long number) {
+			return base + (int) (number % size) * BUCKET_SIZE;
+		}
+
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				buffer.putLong(base + i * BUCKET_SIZE + B_NUMBER, -1);
+			}
+		}
+
+		void add(long time, int level, boolean isCharging) {
+			long number = time / duration;
+			int offset = offset(number);
+			MappedByteBuffer b = buffer;
+			long current = b.getLong(offset + B_NUMBER);
+			if (current != number) {
+				if (current > number) {
+					return; // too old
+				}
+				b.putInt(offset + B_SUM, 0);
+				b.putInt(offset + B_COUNT, 0);
+				b.putInt(offset + B_CHARGING, 0);
+				b.put(offset + B_MIN, (byte) level);
+				b.put(offset + B_MAX, (byte) level);
+				b.putLong(offset + B_NUMBER, number);
+			}
+			if (level < b.get(offset + B_MIN)) {
+				b.put(offset + B_MIN, (byte) level);
+			}
+			if (level > b.get(offset + B_MAX)) {
+				b.put(offset + B_MAX, (byte) level);
+			}
+			b.putInt(offset + B_SUM, b.getInt(offset + B_SUM) + level);
+			b.putInt(offset + B_COUNT, b.getInt(offset + B_COUNT) + 1);
+			if (isCharging) {
+				b.putInt(offset + B_CHARGING, b.getInt(offset + B_CHARGING) + 1);
+			}
+		}
+	}
+
+	private RollupIndex(File file) throws IOException {
+		int buckets = 0;
+		for (int size : SIZES) {
+			buckets += size;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long size = HEADER_SIZE + (long) buckets * BUCKET_SIZE;
+			raf.setLength(size);
+			mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			// mapping stays valid after the channel is closed
+			raf.close();
+		}
+		int base = HEADER_SIZE;
+		for (int i = 0; i < mRollups.length; i++) {
+			mRollups[i] = new Rollup(mBuffer, base, DURATIONS[i], SIZES[i]);
+			base += SIZES[i] * BUCKET_SIZE;
+		}
+	}
+
+	/**
+	 * Returns true if the file holds rollups of this layout.
+	 */
+	private boolean isValid() {
+		MappedByteBuffer buffer = mBuffer;
+		if (buffer.getInt(H_MAGIC) != MAGIC || buffer.getShort(H_VERSION) != VERSION
+				|| buffer.getShort(H_BUCKET_SIZE) != BUCKET_SIZE) {
+			return false;
+		}
+		for (int i = 0; i < SIZES.length; i++) {
+			if (buffer.getInt(H_SIZES + i * 4) != SIZES[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void reset() {
+		MappedByteBuffer buffer = mBuffer;
+		buffer.putInt(H_MAGIC, 0);
+		for (Rollup rollup : mRollups) {
+			rollup.clear();
+		}
+		buffer.putShort(H_VERSION, (short) VERSION);
+		buffer.putShort(H_BUCKET_SIZE, (short) BUCKET_SIZE);
+		for (int i = 0; i < SIZES.length; i++) {
+			buffer.putInt(H_SIZES + i * 4, SIZES[i]);
+		}
+		// magic goes last, a crash before leaves the file invalid and rebuilt
+	}
+
+	/**
+	 * Returns rollup index shared within the process or null if it cannot be
+	 * opened. A new index is rebuilt from the history log in the background.
+	 */
+	public static synchronized RollupIndex getInstance(Context context) {
+		if (sInstance == null) {
+			try {
+				RollupIndex index = new RollupIndex(new File(context.getFilesDir(), FILE_NAME));
+				if (!index.isValid()) {
+					index.reset();
+					index.rebuild(context.getApplicationContext());
+				}
+				sInstance = index;
+			} catch (IOException e) {
+				Log.e(TAG, "cannot open rollups", e);
+			}
+		}
+		return sInstance;
+	}
+
+	private void rebuild(final Context context) {
+		final HistoryLog log = HistoryLog.getInstance(context);
+		if (log == null) {
+			mBuffer.putInt(H_MAGIC, MAGIC);
+			return;
+		}
+		int last = log.size() - 1;
+		synchronized (this) {
+			// samples added later go through add() only
+			mRebuiltUntil = last < 0 ? 0 : log.getTime(last);
+		}
+		new Thread("rollups-rebuild") {
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				long start = SystemClock.uptimeMillis();
+				long until = mRebuiltUntil;
+				long previous = 0;
+				int size = log.size();
+				int count = 0;
+				for (int i = 0; i < size; i += REBUILD_CHUNK) {
+					synchronized (RollupIndex.this) {
+						int end = Math.min(i + REBUILD_CHUNK, size);
+						for (int j = i; j < end; j++) {
+							long time = log.getTime(j);
+							if (time <= previous) {
+								continue; // index shifted by a ring wrap, seen already
+							}
+							if (time > until) {
+								break;
+							}
+							int level = log.getLevel(j);
+							add(mRollups, time, level, log.getPlugged(j) > 0 && level < 100);
+							previous = time;
+							count++;
+						}
+					}
+				}
+				synchronized (RollupIndex.this) {
+					mRebuiltUntil = 0;
+					mBuffer.putInt(H_MAGIC, MAGIC);
+				}
+				mBuffer.force();
+				Log.d(TAG, "rollups rebuilt from " + count + " samples in " + (SystemClock.uptimeMillis() - start)
+						+ " ms");
+			}
+		}.start();
+	}
+
+	public synchronized void add(long time, int level, boolean charging) {
+		if (time <= mRebuiltUntil) {
+			return; // counted by the rebuild
+		}
+		add(mRollups, time, level, charging);
+	}
+
+	private static void add(Rollup[] rollups, long time, int level, boolean charging) {
+		if (time <= 0 || level < 0) {
+			return;
+		}
+		for (int i = 0; i < rollups.length; i++) {
+			rollups[i].add(time, level, charging);
+		}
+	}
+
+	/**
+	 * Flushes the rollups to the storage.
+	 */
+	public void flush() {
+		mBuffer.force();
+	}
+
+	public static long getBucketDuration(int resolution) {
+		return DURATIONS[resolution];
+	}
+
+	/**
+	 * Copies non-empty buckets of given resolution overlapping [from, to)
+	 * into given arrays, in time order. Mean and charging fraction are
+	 * returned per bucket. Returns number of buckets copied, never more than
+	 * the arrays can hold.
+	 */
+	public synchronized int query(int resolution, long from, long to, long[] time, int[] min, int[] max,
+			float[] mean, float[] chargingFraction) {
+
+		Rollup rollup = mRollups[resolution];
+		MappedByteBuffer b = rollup.buffer;
+		long duration = rollup.duration;
+		int size = rollup.size;
+
+		long first = from / duration;
+		long last = (to - 1) / duration;
+		if (last - first >= size) {
+			first = last - size + 1; // older buckets are overwritten
+		}
+
+		int n = 0;
+		for (long number = first; number <= last && n < time.length; number++) {
+			int offset = rollup.offset(number);
+			int count = b.getInt(offset + B_COUNT);
+			if (b.getLong(offset + B_NUMBER) != number || count == 0) {
+				continue;
+			}
+			time[n] = number * duration;
+			min[n] = b.get(offset + B_MIN);
+			max[n] = b.get(offset + B_MAX);
+			mean[n] = (float) b.getInt(offset + B_SUM) / count;
+			chargingFraction[n] = (float) b.getInt(offset + B_CHARGING) / count;
+			n++;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Counters and latency histograms of {@link BatteryService}, kept in atomic
+ * primitives so that they can be updated from any thread without locking.
+ * Durations are collected into power-of-two microsecond buckets.
+ */
+public class ServiceMetrics {
+
+	public static final String FILE_NAME = "metrics.bin";
+
+	private static final int VERSION = 2;
+	private static final int BUCKETS = 20; // up to ~0.5 s, longer go to the last one
+
+	private final long mStartTime = System.currentTimeMillis();
+
+	final AtomicLong broadcasts = new AtomicLong();
+	final AtomicLong updatesPushed = new AtomicLong(); // posted to the update thread
+	final AtomicLong updatesRendered = new AtomicLong();
+	final AtomicLong updatesSuppressed = new AtomicLong();
+	final AtomicLong receiverRegistrations = new AtomicLong();
+	final AtomicLong receiverUnregistrations = new AtomicLong();
+
+	private final AtomicLong mReceiverActiveTime = new AtomicLong(); // ms
+	private final AtomicLong mReceiverActiveSince = new AtomicLong(); // 0 if not active
+
+	private final AtomicLong mUpdateTime = new AtomicLong(); // us
+	private final AtomicLongArray mUpdateHistogram = new AtomicLongArray(BUCKETS);
+
+	public void onReceiverRegistered() {
+		receiverRegistrations.incrementAndGet();
+		mReceiverActiveSince.compareAndSet(0, SystemClock.elapsedRealtime());
+	}
+
+	public void onReceiverUnregistered() {
+		receiverUnregistrations.incrementAndGet();
+		long since = mReceiverActiveSince.getAndSet(0);
+		if (since != 0) {
+			mReceiverActiveTime.addAndGet(SystemClock.elapsedRealtime() - since);
+		}
+	}
+
+	/**
+	 * Records duration of a widget render in nanoseconds.
+	 */
+	public void onUpdateRendered(long nanos) {
+		updatesRendered.incrementAndGet();
+		long micros = nanos / 1000;
+		mUpdateTime.addAndGet(micros);
+		mUpdateHistogram.incrementAndGet(getBucket(micros));
+	}
+
+	public long getReceiverActiveTime() {
+		long time = mReceiverActiveTime.get();
+		long since = mReceiverActiveSince.get();
+		if (since != 0) {
+			time += SystemClock.elapsedRealtime() - since;
+		}
+		return time;
+	}
+
+	public void dump(PrintWriter pw) {
+		long pushed = updatesPushed.get();
+		long rendered = updatesRendered.get();
+		pw.println("metrics since " + new java.util.Date(mStartTime));
+		pw.println("  broadcasts received:      " + broadcasts.get());
+		pw.println("  updates pushed:           " + pushed);
+		pw.println("  updates rendered:         " + rendered);
+		if (rendered > 0) {
+			pw.println("  updates per render:       " + (float) pushed / rendered);
+		}
+		pw.println("  updates suppressed:       " + updatesSuppressed.get());
+		pw.println("  receiver registrations:   " + receiverRegistrations.get());
+		pw.println("  receiver unregistrations: " + receiverUnregistrations.get());
+		pw.println("  receiver active:          " + getReceiverActiveTime() / 1000 + " s");
+		pw.println("  update time total:        " + mUpdateTime.get() / 1000 + " ms");
+		if (rendered > 0) {
+			pw.println("  update time average:      " + mUpdateTime.get() / rendered + " us");
+		}
+		pw.println("  update time histogram:");
+		for (int i = 0; i < BUCKETS; i++) {
+			long count = mUpdateHistogram.get(i);
+			if (count > 0) {
+				pw.println("    " + (i == BUCKETS - 1 ? ">= " : "< ") + (1L << i) + " us: " + count);
+			}
+		}
+	}
+
+	/**
+	 * Writes all values into given file: int version, then big-endian longs
+	 * of start time, write time, counters, receiver active time, total render
+	 * time and the histogram buckets.
+	 */
+	public void save(File file) {
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new FileOutputStream(tmp));
+			out.writeInt(VERSION);
+			out.writeLong(mStartTime);
+			out.writeLong(System.currentTimeMillis());
+			out.writeLong(broadcasts.get());
+			out.writeLong(updatesPushed.get());
+			out.writeLong(updatesRendered.get());
+			out.writeLong(updatesSuppressed.get());
+			out.writeLong(receiverRegistrations.get());
+			out.writeLong(receiverUnregistrations.get());
+			out.writeLong(getReceiverActiveTime());
+			out.writeLong(mUpdateTime.get());
+			for (int i = 0; i < BUCKETS; i++) {
+				out.writeLong(mUpdateHistogram.get(i));
+			}
+			out.close();
+			out = null;
+			if (!tmp.renameTo(file)) {
+				Log.e(TAG, "cannot replace metrics");
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "cannot save metrics", e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private static int getBucket(long micros) {
+		int bucket = 64 - Long.numberOfLeadingZeros(micros); // micros < 2^bucket
+		return bucket < BUCKETS ? bucket : BUCKETS - 1;
+	}
+}
@@ -16,25 +16,30 @@
 
 package org.droidparts.battery_widget;
 
-import static org.droidparts.battery_widget.BatteryWidget.PREFS;
-import static org.droidparts.battery_widget.BatteryWidget.PREF_ACTIVITY_NAME;
-import static org.droidparts.battery_widget.BatteryWidget.PREF_CLASS_NAME;
-import static org.droidparts.battery_widget.BatteryWidget.PREF_PACKAGE_NAME;
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.app.ExpandableListActivity;
+import android.appwidget.AppWidgetManager;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -42,6 +47,7 @@ import android.view.Window;
 import android.view.View.OnClickListener;
 import android.widget.BaseExpandableListAdapter;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -50,7 +56,7 @@ public class SettingsActivityList extends ExpandableListActivity implements OnCl
 	static class Group {
 	    Group(int titleTextId) {this.titleTextId = titleTextId;}
 	    int titleTextId;
-	    ArrayList<ResolveInfo> children = new ArrayList<ResolveInfo>();
+	    ArrayList<ActivityIndex.Entry> children = new ArrayList<ActivityIndex.Entry>();
 	}
 	
 	static class FeaturedActivity {
@@ -64,24 +70,110 @@ public class SettingsActivityList extends ExpandableListActivity implements OnCl
 	
 	class ExpandableListAdapter extends BaseExpandableListAdapter {
 
-	    private final ArrayList<Group> mGroups = new ArrayList<Group>();
+	    private final ArrayList<Group> mAllGroups = new ArrayList<Group>();
+	    private ArrayList<Group> mGroups = mAllGroups; // visible groups
 	    private final LayoutInflater mInflater;
 	    
+	    // filter
+	    private String mFilter = "";
+	    private PrefixIndex mIndex;
+	    private ArrayList<ActivityIndex.Entry> mIndexEntries;
+	    private ArrayList<Group> mIndexGroups;
+	    private boolean[] mMatched;
+	    
 	    public ExpandableListAdapter(LayoutInflater inflater) {
 	        mInflater = inflater;
 	        
 	        // create featured activities
 	        String[] params;
-	        FeaturedActivity activity;
-	        ArrayList<String> classNames = new ArrayList<String>();
 	        String[] activities = SettingsActivityList.this.getResources().getStringArray(R.array.featured_activities);
 	        for (int i=0; i<activities.length; i++) {
 	            params = TextUtils.split(activities[i], "/");
-	            mFeaturedActivities.add(activity = new FeaturedActivity(params[1], params[0]));
-	            classNames.add(activity.className);
+	            mFeaturedActivities.add(new FeaturedActivity(params[1], params[0]));
+	            mFeaturedNames.add(activities[i]);
+	        }
+	    }
+	    
+	    /**
+	     * Called after activities have been added to the groups.
+	     */
+	    void onActivitiesChanged() {
+	        mIndex = null;
+	        if (mFilter.length() > 0) {
+	            applyFilter(mFilter);
+	        } else {
+	            notifyDataSetChanged();
+	        }
+	    }
+	    
+	    /**
+	     * Shows only activities with a label or a word in it starting with
+	     * given text.
+	     */
+	    void setFilter(String filter) {
+	        filter = filter.trim().toLowerCase();
+	        if (!filter.equals(mFilter)) {
+	            mFilter = filter;
+	            applyFilter(filter);
+	        }
+	    }
+	    
+	    private void applyFilter(String filter) {
+	        if (filter.length() == 0) {
+	            mGroups = mAllGroups;
+	            notifyDataSetChanged();
+	            return;
+	        }
+	        
+	        if (mIndex == null) {
+	            // labels are already loaded, just index them
+	            mIndexEntries = new ArrayList<ActivityIndex.Entry>();
+	            mIndexGroups = new ArrayList<Group>();
+	            ArrayList<String> keys = new ArrayList<String>();
+	            for (Group group : mAllGroups) {
+	                for (ActivityIndex.Entry entry : group.children) {
+	                    mIndexEntries.add(entry);
+	                    mIndexGroups.add(group);
+	                    keys.add(entry.sortKey);
+	                }
+	            }
+	            mIndex = new PrefixIndex(keys);
+	            mMatched = new boolean[keys.size()];
+	        }
+	        
+	        ArrayList<Group> groups = new ArrayList<Group>(mAllGroups.size());
+	        for (Group group : mAllGroups) {
+	            groups.add(new Group(group.titleTextId));
+	        }
+	        
+	        int count = mIndex.find(filter);
+	        for (int i = 0; i < count; i++) {
+	            int item = mIndex.getMatch(i);
+	            if (!mMatched[item]) { // several words of a label may match
+	                mMatched[item] = true;
+	                groups.get(mAllGroups.indexOf(mIndexGroups.get(item))).children.add(mIndexEntries.get(item));
+	            }
+	        }
+	        for (int i = 0; i < count; i++) {
+	            mMatched[mIndex.getMatch(i)] = false;
+	        }
+	        
+	        for (int i = groups.size() - 1; i >= 0; i--) {
+	            Group group = groups.get(i);
+	            if (group.children.isEmpty()) {
+	                groups.remove(i);
+	            } else {
+	                Collections.sort(group.children);
+	            }
+	        }
+	        
+	        mGroups = groups;
+	        notifyDataSetChanged();
+	        
+	        // show what was found
+	        for (int i = 0; i < groups.size(); i++) {
+	            getExpandableListView().expandGroup(i);
 	        }
-	        mFeaturedClassNames = classNames.toArray(new String[classNames.size()]);
-	        Arrays.sort(mFeaturedClassNames);
 	    }
 	    
         public Object getChild(int groupPosition, int childPosition) {
@@ -101,22 +193,21 @@ public class SettingsActivityList extends ExpandableListActivity implements OnCl
 
             Group group = mGroups.get(groupPosition);
             
-            ActivityInfo activityInfo = group.children.get(childPosition).activityInfo;
+            ActivityIndex.Entry entry = group.children.get(childPosition);
             
             ImageView icon = (ImageView) convertView.findViewById(R.id.icon);
             TextView text1 = (TextView) convertView.findViewById(R.id.text1);
             Button button = (Button) convertView.findViewById(R.id.button1);
             button.setEnabled(true);
-            button.setTag(activityInfo);
+            button.setTag(entry);
             button.setOnClickListener(SettingsActivityList.this);
 
             View item = convertView.findViewById(R.id.item);
-            item.setTag(activityInfo);
+            item.setTag(entry);
             item.setOnClickListener(SettingsActivityList.this);
 
-            PackageManager pm = mPackageManager;
-            icon.setImageDrawable(activityInfo.loadIcon(pm));
-            text1.setText(activityInfo.loadLabel(pm));
+            mIconLoader.bind(icon, entry);
+            text1.setText(entry.label);
 
             return convertView;
         }
@@ -160,7 +251,20 @@ public class SettingsActivityList extends ExpandableListActivity implements OnCl
 	}
 	
 	
-	class CollectActivitiesTask extends AsyncTask<Void, Group, Void> {
+	static class Chunk {
+	    Chunk(int titleTextId, List<ActivityIndex.Entry> entries) {
+	        this.titleTextId = titleTextId;
+	        this.entries = entries;
+	    }
+	    int titleTextId;
+	    List<ActivityIndex.Entry> entries;
+	}
+	
+	class CollectActivitiesTask extends AsyncTask<Void, Chunk, Void> {
+
+		private static final int THREADS = 3;
+		private static final int FIRST_CHUNK_SIZE = 12; // about a screen
+		private static final int CHUNK_SIZE = 100;
 
 		@Override
 		protected void onPreExecute() {
@@ -172,109 +276,183 @@ public class SettingsActivityList extends ExpandableListActivity implements OnCl
 			setProgressBarIndeterminateVisibility(false);
 		}
 
-		protected void onProgressUpdate(Group...group) {
+		protected void onProgressUpdate(Chunk... chunks) {
 		    ExpandableListAdapter adapter = mAdapter;
-			adapter.mGroups.add(group[0]);
-			adapter.notifyDataSetChanged();
+		    for (Chunk chunk : chunks) {
+		        Group group = null;
+		        for (Group g : adapter.mAllGroups) {
+		            if (g.titleTextId == chunk.titleTextId) {
+		                group = g;
+		                break;
+		            }
+		        }
+		        if (group == null) {
+		            group = new Group(chunk.titleTextId);
+		            // featured activities go first
+		            if (chunk.titleTextId == R.string.txt_recommended) {
+		                adapter.mAllGroups.add(0, group);
+		            } else {
+		                adapter.mAllGroups.add(group);
+		            }
+		        }
+		        
+		        ArrayList<ActivityIndex.Entry> children = group.children;
+		        if (chunk.titleTextId == R.string.txt_recommended) {
+		            // featured results arrive in any order, keep them sorted
+		            for (ActivityIndex.Entry entry : chunk.entries) {
+		                int index = Collections.binarySearch(children, entry);
+		                children.add(index < 0 ? -index - 1 : index, entry);
+		            }
+		        } else {
+		            // chunks of the index arrive sorted
+		            children.addAll(chunk.entries);
+		        }
+		    }
+			adapter.onActivitiesChanged();
 		}
 
 		@Override
 		protected Void doInBackground(Void... params) {
 
-		    Group group;		    
+		    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		    CompletionService<Chunk> completion = new ExecutorCompletionService<Chunk>(executor);
+		    int tasks = 0;
 		    
-		    // get check all recommended activities
-		    { 
-    		    final Intent intent = new Intent();
-    		    group = new Group(R.string.txt_recommended);
-                
-    		    FeaturedActivity activity;
-    		    ArrayList<FeaturedActivity> activities = mFeaturedActivities;
-                int size = activities.size();
-                for (int i = 0; i < size; i++) {
-                    activity = activities.get(i); 
-                    intent.setClassName(activity.packageName, activity.className);
-                    List<ResolveInfo> infos = mPackageManager.queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY);
-                    for (ResolveInfo info : infos) {
-                        group.children.add(info);
-                    }
-                }
+		    try {
+    		    // query each featured activity separately
+    		    for (final FeaturedActivity activity : mFeaturedActivities) {
+    		        completion.submit(new Callable<Chunk>() {
+    		            public Chunk call() {
+    		                Intent intent = new Intent();
+    		                intent.setClassName(activity.packageName, activity.className);
+    		                List<ResolveInfo> infos = mPackageManager.queryIntentActivities(intent,
+    		                        PackageManager.MATCH_DEFAULT_ONLY);
+    		                ArrayList<ActivityIndex.Entry> entries = new ArrayList<ActivityIndex.Entry>(infos.size());
+    		                for (ResolveInfo info : infos) {
+    		                    entries.add(new ActivityIndex.Entry(info.activityInfo, mPackageManager));
+    		                }
+    		                return new Chunk(R.string.txt_recommended, entries);
+    		            }
+    		        });
+    		        tasks++;
+    		    }
     		    
-                if (group.children.size() > 0) {
-                    publishProgress(group);
-                }
-		    }
-		    
-		    // get other activities
-		    {
-                group = new Group(R.string.txt_other);
-                
-                Intent queryIntent = new Intent(Intent.ACTION_MAIN);
-                queryIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-                List<ResolveInfo> list = mPackageManager.queryIntentActivities(queryIntent, 0);
-    
-                // Sort the list
-                Collections.sort(list, new ResolveInfo.DisplayNameComparator(mPackageManager));
-    
-                String className;
-                for(ResolveInfo item : list) {
-                    
-                    // remove featured activities from the list
-                    className = item.activityInfo.name;
-                    int index = Arrays.binarySearch(mFeaturedClassNames, className);
-                    if (index < 0) { // not in the list of featured activities
-                        group.children.add(item);
-                    }
-                    
-                }
-                
-                if (group.children.size() > 0) {
-                    publishProgress(group);
-                }
+    		    // get other activities, sorted by label
+    		    completion.submit(new Callable<Chunk>() {
+    		        public Chunk call() {
+    		            List<ActivityIndex.Entry> list = ActivityIndex.load(SettingsActivityList.this);
+    		            ArrayList<ActivityIndex.Entry> entries = new ArrayList<ActivityIndex.Entry>(list.size());
+    		            for (ActivityIndex.Entry item : list) {
+    		                // remove featured activities from the list
+    		                if (!mFeaturedNames.contains(item.packageName + "/" + item.className)) {
+    		                    entries.add(item);
+    		                }
+    		            }
+    		            return new Chunk(R.string.txt_other, entries);
+    		        }
+    		    });
+    		    tasks++;
+    		    
+    		    // publish results as they come
+    		    for (int i = 0; i < tasks && !isCancelled(); i++) {
+    		        Chunk chunk = completion.take().get();
+    		        if (chunk.entries.isEmpty()) {
+    		            continue;
+    		        }
+    		        if (chunk.titleTextId == R.string.txt_recommended) {
+    		            publishProgress(chunk);
+    		        } else {
+    		            publishInChunks(chunk);
+    		        }
+    		    }
+		    } catch (InterruptedException e) {
+		        // cancelled
+		    } catch (ExecutionException e) {
+		        Log.e(TAG, "cannot collect activities", e.getCause());
+		    } finally {
+		        executor.shutdownNow();
 		    }
 		    
 			return null;
 		}
 
+		private void publishInChunks(Chunk chunk) {
+		    List<ActivityIndex.Entry> entries = chunk.entries;
+		    int size = entries.size();
+		    int start = 0;
+		    int end = Math.min(FIRST_CHUNK_SIZE, size);
+		    while (start < size && !isCancelled()) {
+		        publishProgress(new Chunk(chunk.titleTextId, entries.subList(start, end)));
+		        start = end;
+		        end = Math.min(end + CHUNK_SIZE, size);
+		    }
+		}
+
 	}
 
 	PackageManager mPackageManager;
+	IconLoader mIconLoader;
 	ExpandableListAdapter mAdapter;
     ArrayList<FeaturedActivity> mFeaturedActivities = new ArrayList<FeaturedActivity>();
-    String[] mFeaturedClassNames; // search dictionary
+    HashSet<String> mFeaturedNames = new HashSet<String>(); // package/class
 
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
 		requestWindowFeature(Window.FEATURE_INDETERMINATE_PROGRESS);
 		setProgressBarVisibility(true);
+		setContentView(R.layout.activity_list);
 
 		setListAdapter(mAdapter = new ExpandableListAdapter(getLayoutInflater()));
 		mPackageManager = getPackageManager();
+		mIconLoader = new IconLoader(mPackageManager, getIconCacheSize());
 
 		new CollectActivitiesTask().execute();
 		getExpandableListView().setItemsCanFocus(true);
+		
+		EditText filter = (EditText) findViewById(R.id.filter);
+		filter.addTextChangedListener(new TextWatcher() {
+			public void onTextChanged(CharSequence s, int start, int before, int count) {
+				mAdapter.setFilter(s.toString());
+			}
+
+			public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+			}
+
+			public void afterTextChanged(Editable s) {
+			}
+		});
+	}
+
+	protected void onDestroy() {
+		super.onDestroy();
+		mIconLoader.shutdown();
+	}
+
+	private static int getIconCacheSize() {
+		// an eighth of the heap, but not more than 4 MB
+		return (int) Math.min(Runtime.getRuntime().maxMemory() / 8, 4 * 1024 * 1024);
 	}
 
 	public void onClick(View view) {
 
 		if (view.getId() == R.id.item) {
 
-			ActivityInfo activityInfo = (ActivityInfo) view.getTag();
+			ActivityIndex.Entry entry = (ActivityIndex.Entry) view.getTag();
 
 			// store configuration
-			SharedPreferences prefs = getApplication().getSharedPreferences(PREFS, MODE_PRIVATE);
-			prefs.edit().putString(PREF_CLASS_NAME, activityInfo.name).putString(PREF_PACKAGE_NAME,
-					activityInfo.packageName).putString(PREF_ACTIVITY_NAME,
-					activityInfo.loadLabel(mPackageManager).toString()).commit();
+			int appWidgetId = getIntent().getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+					AppWidgetManager.INVALID_APPWIDGET_ID);
+			SettingsStore.getInstance(this).edit().setActivity(appWidgetId, entry.packageName, entry.className,
+					entry.label).apply();
 
 			// exit activity
 			finish();
 		} else {
 
-			ActivityInfo activityInfo = (ActivityInfo) view.getTag();
-			String packageName = activityInfo.packageName;
-			String className = activityInfo.name;
+			ActivityIndex.Entry entry = (ActivityIndex.Entry) view.getTag();
+			String packageName = entry.packageName;
+			String className = entry.className;
 
 			Intent intent = new Intent();
 			intent.setClassName(packageName, className);
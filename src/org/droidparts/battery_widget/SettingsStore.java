@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static android.content.Context.MODE_PRIVATE;
+import static org.droidparts.battery_widget.BatteryWidget.DESIGN_AWFULLY_COOL;
+import static org.droidparts.battery_widget.BatteryWidget.PREFS;
+import static org.droidparts.battery_widget.BatteryWidget.PREF_ACTIVITY_NAME;
+import static org.droidparts.battery_widget.BatteryWidget.PREF_CLASS_NAME;
+import static org.droidparts.battery_widget.BatteryWidget.PREF_DESIGN_TYPE;
+import static org.droidparts.battery_widget.BatteryWidget.PREF_PACKAGE_NAME;
+import static org.droidparts.battery_widget.BatteryWidget.PREF_SERVICE_LESS;
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Typed settings kept in memory as an immutable snapshot. Readers get the
+ * current snapshot without locking or touching the disk; a change replaces
+ * the snapshot atomically, notifies listeners and is written to the shared
+ * preferences on a background thread. Changes arriving while a write is
+ * pending are merged into one commit.
+ */
+public class SettingsStore {
+
+	public interface Listener {
+		/**
+		 * Called on the main thread after given keys have changed.
+		 */
+		void onSettingsChanged(Snapshot snapshot, Set<String> keys);
+	}
+
+	/**
+	 * Settings at one point in time. Never changes.
+	 */
+	public static final class Snapshot {
+		private final HashMap<String, Object> mValues;
+
+		Snapshot(HashMap<String, Object> values) {
+			mValues = values;
+		}
+
+		public boolean isServiceLess() {
+			return Boolean.TRUE.equals(mValues.get(PREF_SERVICE_LESS));
+		}
+
+		/**
+		 * Returns design of given widget instance, falling back to the
+		 * default design if the instance has no own one.
+		 */
+		public int getDesign(int appWidgetId) {
+			Object design = mValues.get(BatteryWidget.getPrefKey(PREF_DESIGN_TYPE, appWidgetId));
+			if (design == null) {
+				design = mValues.get(PREF_DESIGN_TYPE);
+			}
+			return design instanceof Integer ? (Integer) design : DESIGN_AWFULLY_COOL;
+		}
+
+		/**
+		 * Returns whether given widget instance has its own activity
+		 * configured, the default one is used otherwise.
+		 */
+		public boolean hasActivity(int appWidgetId) {
+			return mValues.containsKey(BatteryWidget.getPrefKey(PREF_ACTIVITY_NAME, appWidgetId));
+		}
+
+		public String getActivityName(int appWidgetId) {
+			return getString(BatteryWidget.getPrefKey(PREF_ACTIVITY_NAME, appWidgetId));
+		}
+
+		public String getPackageName(int appWidgetId) {
+			return getString(BatteryWidget.getPrefKey(PREF_PACKAGE_NAME, appWidgetId));
+		}
+
+		public String getClassName(int appWidgetId) {
+			return getString(BatteryWidget.getPrefKey(PREF_CLASS_NAME, appWidgetId));
+		}
+
+		private String getString(String key) {
+			Object value = mValues.get(key);
+			return value instanceof String ? (String) value : null;
+		}
+	}
+
+	/**
+	 * Collects changes, {@link #apply()} publishes them.
+	 */
+	public final class Editor {
+		private final HashMap<String, Object> mChanges = new HashMap<String, Object>();
+
+		private Editor() {
+		}
+
+		public Editor setServiceLess(boolean serviceLess) {
+			mChanges.put(PREF_SERVICE_LESS, Boolean.valueOf(serviceLess));
+			return this;
+		}
+
+		public Editor setDesign(int appWidgetId, int design) {
+			mChanges.put(BatteryWidget.getPrefKey(PREF_DESIGN_TYPE, appWidgetId), Integer.valueOf(design));
+			return this;
+		}
+
+		public Editor setActivity(int appWidgetId, String packageName, String className, String name) {
+			mChanges.put(BatteryWidget.getPrefKey(PREF_PACKAGE_NAME, appWidgetId), packageName);
+			mChanges.put(BatteryWidget.getPrefKey(PREF_CLASS_NAME, appWidgetId), className);
+			mChanges.put(BatteryWidget.getPrefKey(PREF_ACTIVITY_NAME, appWidgetId), name);
+			return this;
+		}
+
+		public Editor removeActivityName(int appWidgetId) {
+			mChanges.put(BatteryWidget.getPrefKey(PREF_ACTIVITY_NAME, appWidgetId), REMOVED);
+			return this;
+		}
+
+		/**
+		 * Removes configuration of given widget instance.
+		 */
+		public Editor removeConfiguration(int appWidgetId) {
+			mChanges.put(BatteryWidget.getPrefKey(PREF_DESIGN_TYPE, appWidgetId), REMOVED);
+			mChanges.put(BatteryWidget.getPrefKey(PREF_ACTIVITY_NAME, appWidgetId), REMOVED);
+			mChanges.put(BatteryWidget.getPrefKey(PREF_CLASS_NAME, appWidgetId), REMOVED);
+			mChanges.put(BatteryWidget.getPrefKey(PREF_PACKAGE_NAME, appWidgetId), REMOVED);
+			return this;
+		}
+
+		/**
+		 * Publishes changes to readers right away and writes them to disk
+		 * in the background. Listeners are notified before this method
+		 * returns if it is called from the main thread.
+		 */
+		public void apply() {
+			publish(mChanges);
+		}
+	}
+
+	// marks removed keys
+	private static final Object REMOVED = new Object();
+
+	private static SettingsStore sInstance;
+
+	private final SharedPreferences mPrefs;
+	private final AtomicReference<Snapshot> mSnapshot = new AtomicReference<Snapshot>();
+	private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+	// changes not written yet, guarded by mLock
+	private final Object mLock = new Object();
+	private HashMap<String, Object> mPending;
+
+	private final Runnable mWriteTask = new Runnable() {
+		public void run() {
+			HashMap<String, Object> changes;
+			synchronized (mLock) {
+				changes = mPending;
+				mPending = null;
+			}
+			long start = SystemClock.uptimeMillis();
+			SharedPreferences.Editor editor = mPrefs.edit();
+			for (Map.Entry<String, Object> entry : changes.entrySet()) {
+				Object value = entry.getValue();
+				if (value == REMOVED) {
+					editor.remove(entry.getKey());
+				} else if (value instanceof Integer) {
+					editor.putInt(entry.getKey(), (Integer) value);
+				} else if (value instanceof Boolean) {
+					editor.putBoolean(entry.getKey(), (Boolean) value);
+				} else {
+					editor.putString(entry.getKey(), (String) value);
+				}
+			}
+			if (!editor.commit()) {
+				Log.e(TAG, "cannot write settings");
+			}
+			Log.d(TAG, changes.size() + " settings written in " + (SystemClock.uptimeMillis() - start) + " ms");
+		}
+	};
+
+	private SettingsStore(Context context) {
+		mPrefs = context.getSharedPreferences(PREFS, MODE_PRIVATE);
+		HashMap<String, Object> values = new HashMap<String, Object>(mPrefs.getAll());
+		mSnapshot.set(new Snapshot(values));
+	}
+
+	public static synchronized SettingsStore getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new SettingsStore(context.getApplicationContext());
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Shortcut for the current snapshot.
+	 */
+	public static Snapshot get(Context context) {
+		return getInstance(context).getSnapshot();
+	}
+
+	public Snapshot getSnapshot() {
+		return mSnapshot.get();
+	}
+
+	public Editor edit() {
+		return new Editor();
+	}
+
+	public void addListener(Listener listener) {
+		mListeners.addIfAbsent(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		mListeners.remove(listener);
+	}
+
+	private void publish(HashMap<String, Object> changes) {
+		if (changes.isEmpty()) {
+			return;
+		}
+		final Snapshot snapshot;
+		synchronized (mLock) {
+			HashMap<String, Object> values = new HashMap<String, Object>(mSnapshot.get().mValues);
+			for (Map.Entry<String, Object> entry : changes.entrySet()) {
+				if (entry.getValue() == REMOVED || entry.getValue() == null) {
+					values.remove(entry.getKey());
+				} else {
+					values.put(entry.getKey(), entry.getValue());
+				}
+			}
+			snapshot = new Snapshot(values);
+			mSnapshot.set(snapshot);
+
+			if (mPending == null) {
+				mPending = new HashMap<String, Object>(changes);
+				mWriter.execute(mWriteTask);
+			} else {
+				mPending.putAll(changes); // goes with the scheduled write
+			}
+		}
+
+		final Set<String> keys = new HashSet<String>(changes.keySet());
+		if (Looper.myLooper() == Looper.getMainLooper()) {
+			notifyListeners(snapshot, keys);
+		} else {
+			mHandler.post(new Runnable() {
+				public void run() {
+					notifyListeners(snapshot, keys);
+				}
+			});
+		}
+	}
+
+	private void notifyListeners(Snapshot snapshot, Set<String> keys) {
+		for (Listener listener : mListeners) {
+			listener.onSettingsChanged(snapshot, keys);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.content.Context;
+import android.content.pm.PackageManager.NameNotFoundException;
+
+/**
+ * Battery state shared with other processes through a small memory mapped
+ * file. {@link BatteryService} is the only writer; readers in any process of
+ * the shared user id map the file read-only and get a consistent snapshot
+ * without binder calls and without starting the service.
+ * <p>
+ * Consistency is guarded by a sequence counter, odd while a write is in
+ * progress. A reader retries if the counter was odd or changed during its
+ * read. Since a mapped buffer gives no ordering guarantees between
+ * processes, every snapshot also carries a checksum of its fields.
+ */
+public class SharedBatteryState {
+
+	public static final String FILE_NAME = "state.bin";
+
+	// package of the widget, the writer
+	private static final String PACKAGE_NAME = "org.droidparts.battery_widget";
+
+	private static final int MAGIC = 0x42415453; // "BATS"
+	private static final int MAX_RETRIES = 100;
+
+	// layout
+	private static final int OFF_MAGIC = 0;
+	private static final int OFF_SEQUENCE = 4;
+	private static final int OFF_TIME = 8;
+	private static final int OFF_LEVEL = 16;
+	private static final int OFF_CHARGING = 20;
+	private static final int OFF_REMAINING = 24;
+	private static final int OFF_CHECKSUM = 28;
+	private static final int SIZE = 32;
+
+	/**
+	 * Battery state at one point in time.
+	 */
+	public static final class Snapshot {
+		public final long time; // ms, System.currentTimeMillis()
+		public final int level;
+		public final boolean charging;
+		public final int remainingMinutes; // RemainingTimeEstimator.UNKNOWN if unknown
+
+		Snapshot(long time, int level, boolean charging, int remainingMinutes) {
+			this.time = time;
+			this.level = level;
+			this.charging = charging;
+			this.remainingMinutes = remainingMinutes;
+		}
+	}
+
+	private final RandomAccessFile mFile;
+	private final MappedByteBuffer mBuffer;
+	private int mSequence; // writer only
+
+	private SharedBatteryState(File file, boolean writable) throws IOException {
+		mFile = new RandomAccessFile(file, writable ? "rw" : "r");
+		try {
+			if (writable && mFile.length() < SIZE) {
+				mFile.setLength(SIZE);
+			}
+			mBuffer = mFile.getChannel().map(writable ? FileChannel.MapMode.READ_WRITE
+					: FileChannel.MapMode.READ_ONLY, 0, SIZE);
+		} catch (IOException e) {
+			mFile.close();
+			throw e;
+		}
+		if (writable) {
+			// a writer killed in the middle leaves an odd sequence behind
+			mSequence = (mBuffer.getInt(OFF_SEQUENCE) + 1) & ~1;
+			mBuffer.putInt(OFF_SEQUENCE, mSequence);
+			mBuffer.putInt(OFF_MAGIC, MAGIC);
+		}
+	}
+
+	/**
+	 * Opens given file for publishing. Used by {@link BatteryService} only.
+	 */
+	static SharedBatteryState openWriter(File file) throws IOException {
+		return new SharedBatteryState(file, true);
+	}
+
+	/**
+	 * Opens the state published by the widget, given context may belong to
+	 * any package of the shared user id.
+	 */
+	public static SharedBatteryState openReader(Context context) throws IOException {
+		Context widgetContext = context;
+		if (!PACKAGE_NAME.equals(context.getPackageName())) {
+			try {
+				widgetContext = context.createPackageContext(PACKAGE_NAME, 0);
+			} catch (NameNotFoundException e) {
+				throw new IOException("battery widget is not installed");
+			}
+		}
+		return openReader(new File(widgetContext.getFilesDir(), FILE_NAME));
+	}
+
+	static SharedBatteryState openReader(File file) throws IOException {
+		return new SharedBatteryState(file, false);
+	}
+
+	/**
+	 * Publishes new state. Must be called from one thread at a time.
+	 */
+	void publish(long time, int level, boolean charging, int remainingMinutes) {
+		MappedByteBuffer buffer = mBuffer;
+		buffer.putInt(OFF_SEQUENCE, ++mSequence); // odd, write in progress
+		buffer.putLong(OFF_TIME, time);
+		buffer.putInt(OFF_LEVEL, level);
+		buffer.putInt(OFF_CHARGING, charging ? 1 : 0);
+		buffer.putInt(OFF_REMAINING, remainingMinutes);
+		buffer.putInt(OFF_CHECKSUM, checksum(time, level, charging ? 1 : 0, remainingMinutes));
+		buffer.putInt(OFF_SEQUENCE, ++mSequence);
+	}
+
+	/**
+	 * Returns latest published state, or null if nothing is published yet
+	 * or the writer keeps changing it faster than it can be read.
+	 */
+	public Snapshot read() {
+		MappedByteBuffer buffer = mBuffer;
+		if (buffer.getInt(OFF_MAGIC) != MAGIC) {
+			return null;
+		}
+		for (int i = 0; i < MAX_RETRIES; i++) {
+			int sequence = buffer.getInt(OFF_SEQUENCE);
+			if ((sequence & 1) != 0) {
+				Thread.yield(); // write in progress
+				continue;
+			}
+			long time = buffer.getLong(OFF_TIME);
+			int level = buffer.getInt(OFF_LEVEL);
+			int charging = buffer.getInt(OFF_CHARGING);
+			int remaining = buffer.getInt(OFF_REMAINING);
+			int checksum = buffer.getInt(OFF_CHECKSUM);
+			if (buffer.getInt(OFF_SEQUENCE) != sequence || checksum != checksum(time, level, charging, remaining)) {
+				continue;
+			}
+			return sequence == 0 ? null : new Snapshot(time, level, charging != 0, remaining);
+		}
+		return null;
+	}
+
+	public void close() {
+		try {
+			mFile.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private static int checksum(long time, int level, int charging, int remaining) {
+		int h = MAGIC;
+		h = 31 * h + (int) (time ^ (time >>> 32));
+		h = 31 * h + level;
+		h = 31 * h + charging;
+		h = 31 * h + remaining;
+		return h;
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * Battery state polled from the kernel power supply class, by default
+ * <code>/sys/class/power_supply</code>. Gives the current draw and a poll
+ * interval of our choice. Attribute files are kept open and re-read from
+ * offset 0 into a shared buffer, so polling allocates nothing. The root
+ * directory can point to a fake tree; {@link #open()} and {@link #read()}
+ * do not need a running Android environment.
+ */
+public class SysfsBatterySource extends BatterySource implements Runnable {
+
+	public static final File DEFAULT_ROOT = new File("/sys/class/power_supply");
+
+	// shorter intervals would keep the cpu from sleeping while the screen is on
+	public static final long MIN_INTERVAL = 1000; // ms
+
+	private static final byte[] CHARGING = "Charging".getBytes();
+	private static final byte[] DISCHARGING = "Discharging".getBytes();
+	private static final byte[] NOT_CHARGING = "Not charging".getBytes();
+	private static final byte[] FULL = "Full".getBytes();
+
+	private final File mRoot;
+	private final long mInterval;
+	private final byte[] mBuffer = new byte[64];
+
+	private Handler mHandler;
+
+	// open attribute files, null if not present
+	private RandomAccessFile mCapacity;
+	private RandomAccessFile mCurrentNow;
+	private RandomAccessFile mVoltageNow;
+	private RandomAccessFile mStatusFile;
+	private RandomAccessFile mTemp;
+	private RandomAccessFile mAcOnline;
+	private RandomAccessFile mUsbOnline;
+	private RandomAccessFile mWirelessOnline;
+
+	/**
+	 * @param interval poll interval in ms, raised to {@link #MIN_INTERVAL}
+	 *            if shorter
+	 */
+	public SysfsBatterySource(File root, long interval) {
+		mRoot = root;
+		mInterval = Math.max(interval, MIN_INTERVAL);
+	}
+
+	@Override
+	public void start(Context context, Listener listener) {
+		mListener = listener;
+		if (mHandler == null) {
+			mHandler = new Handler();
+			if (!open()) {
+				Log.e(TAG, "no battery found in " + mRoot);
+			}
+			run();
+		}
+	}
+
+	@Override
+	public void stop(Context context) {
+		if (mHandler != null) {
+			mHandler.removeCallbacks(this);
+			mHandler = null;
+			close();
+		}
+	}
+
+	public void run() {
+		if (read()) {
+			mListener.onBatteryChanged(this);
+		}
+		mHandler.postDelayed(this, mInterval);
+	}
+
+	/**
+	 * Finds the battery and the chargers under the root directory and opens
+	 * their attribute files. Returns false if there is no battery capacity.
+	 */
+	public boolean open() {
+		close();
+		File[] supplies = mRoot.listFiles();
+		if (supplies == null) {
+			return false;
+		}
+		for (File supply : supplies) {
+			String type = readString(new File(supply, "type"));
+			if ("Battery".equals(type)) {
+				mCapacity = openAttribute(supply, "capacity");
+				mCurrentNow = openAttribute(supply, "current_now");
+				mVoltageNow = openAttribute(supply, "voltage_now");
+				mStatusFile = openAttribute(supply, "status");
+				mTemp = openAttribute(supply, "temp");
+				mTechnology = readString(new File(supply, "technology"));
+			} else if ("Mains".equals(type)) {
+				mAcOnline = openAttribute(supply, "online");
+			} else if ("USB".equals(type)) {
+				mUsbOnline = openAttribute(supply, "online");
+			} else if ("Wireless".equals(type)) {
+				mWirelessOnline = openAttribute(supply, "online");
+			}
+		}
+		return mCapacity != null;
+	}
+
+	public void close() {
+		mCapacity = close(mCapacity);
+		mCurrentNow = close(mCurrentNow);
+		mVoltageNow = close(mVoltageNow);
+		mStatusFile = close(mStatusFile);
+		mTemp = close(mTemp);
+		mAcOnline = close(mAcOnline);
+		mUsbOnline = close(mUsbOnline);
+		mWirelessOnline = close(mWirelessOnline);
+	}
+
+	/**
+	 * Reads all attributes and returns whether anything has changed.
+	 */
+	public boolean read() {
+		int level = readInt(mCapacity, mLevel);
+		int current = readInt(mCurrentNow, UNKNOWN_CURRENT);
+		int voltage = readInt(mVoltageNow, mVoltage * 1000) / 1000; // uV
+		int temperature = readInt(mTemp, mTemperature);
+		int status = readStatus();
+
+		int plugged = 0;
+		if (readInt(mAcOnline, 0) == 1) {
+			plugged = PLUGGED_AC;
+		} else if (readInt(mUsbOnline, 0) == 1) {
+			plugged = PLUGGED_USB;
+		} else if (readInt(mWirelessOnline, 0) == 1) {
+			plugged = 4; // BatteryManager.BATTERY_PLUGGED_WIRELESS
+		} else if (mAcOnline == null && mUsbOnline == null && mWirelessOnline == null
+				&& (status == STATUS_CHARGING || status == STATUS_FULL)) {
+			plugged = PLUGGED_AC; // no charger information, assume the usual one
+		}
+
+		boolean changed = level != mLevel || current != mCurrent || voltage != mVoltage
+				|| temperature != mTemperature || status != mStatus || plugged != mPlugged;
+		mTime = System.currentTimeMillis();
+		mLevel = level;
+		mCurrent = current;
+		mVoltage = voltage;
+		mTemperature = temperature;
+		mStatus = status;
+		mPlugged = plugged;
+		return changed;
+	}
+
+	private int readStatus() {
+		int length = read(mStatusFile);
+		if (startsWith(length, CHARGING)) {
+			return STATUS_CHARGING;
+		} else if (startsWith(length, DISCHARGING)) {
+			return STATUS_DISCHARGING;
+		} else if (startsWith(length, NOT_CHARGING)) {
+			return STATUS_NOT_CHARGING;
+		} else if (startsWith(length, FULL)) {
+			return STATUS_FULL;
+		}
+		return STATUS_UNKNOWN;
+	}
+
+	private int readInt(RandomAccessFile file, int defaultValue) {
+		int length = read(file);
+		int i = 0;
+		boolean negative = length > 0 && mBuffer[0] == '-';
+		if (negative) {
+			i++;
+		}
+		if (i == length || mBuffer[i] < '0' || mBuffer[i] > '9') {
+			return defaultValue;
+		}
+		long value = 0;
+		for (; i < length && mBuffer[i] >= '0' && mBuffer[i] <= '9'; i++) {
+			value = value * 10 + mBuffer[i] - '0';
+		}
+		value = negative ? -value : value;
+		return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(value, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Reads whole attribute into the buffer and returns its length, 0 if the
+	 * file is not present or cannot be read.
+	 */
+	private int read(RandomAccessFile file) {
+		if (file == null) {
+			return 0;
+		}
+		try {
+			// sysfs regenerates the value on every read from offset 0
+			file.seek(0);
+			int length = file.read(mBuffer, 0, mBuffer.length);
+			return length > 0 ? length : 0;
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private boolean startsWith(int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (mBuffer[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static RandomAccessFile openAttribute(File supply, String name) {
+		File file = new File(supply, name);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			return new RandomAccessFile(file, "r");
+		} catch (IOException e) {
+			return null; // not readable for us
+		}
+	}
+
+	private static String readString(File file) {
+		RandomAccessFile in = openAttribute(file.getParentFile(), file.getName());
+		if (in == null) {
+			return null;
+		}
+		try {
+			return in.readLine().trim();
+		} catch (Exception e) {
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	private static RandomAccessFile close(RandomAccessFile file) {
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Appends received battery and screen broadcasts to a compact trace file,
+ * which can later be fed back into the update pipeline by the trace replay
+ * of the JVM harness in <code>tests/</code>. Every record starts with the wall clock time and the
+ * event type, battery records carry the extras used by the service:
+ *
+ * <pre>
+ * long time, byte type
+ * [short level, short scale, byte plugged, byte status, byte health,
+ *  short temperature, short voltage]  // EVENT_BATTERY only
+ * </pre>
+ */
+public class TraceRecorder {
+
+	public static final String FILE_NAME = "trace.bin";
+
+	public static final int EVENT_BATTERY = 1;
+	public static final int EVENT_SCREEN_ON = 2;
+	public static final int EVENT_SCREEN_OFF = 3;
+
+	private DataOutputStream mOut;
+
+	public TraceRecorder(File file) {
+		try {
+			mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 4096));
+		} catch (IOException e) {
+			Log.e(TAG, "cannot open trace", e);
+		}
+	}
+
+	public void record(long time, Intent intent) {
+		if (mOut == null) {
+			return;
+		}
+		String action = intent.getAction();
+		try {
+			if (Intent.ACTION_BATTERY_CHANGED.equals(action)) {
+				recordBattery(time, intent.getIntExtra("level", -1), intent.getIntExtra("scale", -1),
+						intent.getIntExtra("plugged", 0), intent.getIntExtra("status", 0),
+						intent.getIntExtra("health", 0), intent.getIntExtra("temperature", 0),
+						intent.getIntExtra("voltage", 0));
+			} else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+				mOut.writeLong(time);
+				mOut.writeByte(EVENT_SCREEN_ON);
+			} else if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+				mOut.writeLong(time);
+				mOut.writeByte(EVENT_SCREEN_OFF);
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "cannot write trace", e);
+			close();
+		}
+	}
+
+	public void recordBattery(long time, int level, int scale, int plugged, int status, int health,
+			int temperature, int voltage) {
+		if (mOut == null) {
+			return;
+		}
+		try {
+			mOut.writeLong(time);
+			mOut.writeByte(EVENT_BATTERY);
+			mOut.writeShort(level);
+			mOut.writeShort(scale);
+			mOut.writeByte(plugged);
+			mOut.writeByte(status);
+			mOut.writeByte(health);
+			mOut.writeShort(temperature);
+			mOut.writeShort(voltage);
+		} catch (IOException e) {
+			Log.e(TAG, "cannot write trace", e);
+			close();
+		}
+	}
+
+	public void flush() {
+		if (mOut != null) {
+			try {
+				mOut.flush();
+			} catch (IOException e) {
+				Log.e(TAG, "cannot flush trace", e);
+			}
+		}
+	}
+
+	public void close() {
+		if (mOut != null) {
+			try {
+				mOut.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			mOut = null;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Update stage in front of {@link WidgetUpdateThread}. Drops updates
+ * which would render the same widget state as the last pushed one and merges
+ * bursts of changes arriving within the merge window into a single update.
+ * Must be used from the main thread.
+ */
+public class UpdateFilter implements Runnable {
+
+	public static final long DEFAULT_MERGE_WINDOW = 2000; // ms
+
+	private final WidgetUpdateThread.Mailbox mMailbox;
+	private final Handler mHandler = new Handler();
+	private final ServiceMetrics mMetrics;
+	private final long mMergeWindow;
+
+	// last pushed state
+	private boolean mPushed;
+	private int mVersion;
+	private int mConfigGeneration;
+	private long mPushTime;
+
+	// pending state, packed by BatteryState
+	private boolean mPending;
+	private long mPendingState;
+
+	/**
+	 * @param metrics receives pushed, rendered and suppressed updates, may be null
+	 */
+	public UpdateFilter(Context context, long mergeWindow, ServiceMetrics metrics) {
+		mMailbox = WidgetUpdateThread.getInstance(context).createMailbox(metrics);
+		mMergeWindow = mergeWindow;
+		mMetrics = metrics;
+	}
+
+	/**
+	 * Submits new battery state as published by {@link BatteryState#publish},
+	 * all states submitted to one filter must come from the same reference.
+	 * The widgets get updated immediately if the state version changed and no
+	 * update was pushed within the merge window, later otherwise. Updates of
+	 * an unchanged version are dropped.
+	 */
+	public void submit(long state) {
+		if (mPending) {
+			// merged into the scheduled update
+			mPendingState = state;
+			suppress();
+			return;
+		}
+
+		if (!isChanged(state)) {
+			suppress();
+			return;
+		}
+
+		long delay = mPushTime + mMergeWindow - SystemClock.elapsedRealtime();
+		if (mPushed && delay > 0) {
+			mPending = true;
+			mPendingState = state;
+			mHandler.postDelayed(this, delay);
+		} else {
+			push(state);
+		}
+	}
+
+	/**
+	 * Pushes given state to the widgets right away, regardless of what was
+	 * pushed before. Used when the launcher or the configuration asks for it.
+	 */
+	public void forceUpdate(long state) {
+		cancel();
+		push(state);
+	}
+
+	public void cancel() {
+		if (mPending) {
+			mHandler.removeCallbacks(this);
+			mPending = false;
+		}
+	}
+
+	public void run() {
+		mPending = false;
+		if (isChanged(mPendingState)) {
+			push(mPendingState);
+		} else {
+			suppress();
+		}
+	}
+
+	private boolean isChanged(long state) {
+		if (!mPushed || mVersion != BatteryState.getVersion(state)) {
+			return true;
+		}
+		// design or click target changed
+		return mConfigGeneration != RenderConfig.getGeneration();
+	}
+
+	private void suppress() {
+		if (mMetrics != null) {
+			mMetrics.updatesSuppressed.incrementAndGet();
+		}
+	}
+
+	private void push(long state) {
+		mPushed = true;
+		mVersion = BatteryState.getVersion(state);
+		mConfigGeneration = RenderConfig.getGeneration();
+		mPushTime = SystemClock.elapsedRealtime();
+
+		long start = System.nanoTime();
+		mMailbox.post(state);
+		Log.d(TAG, "update posted in " + ((System.nanoTime() - start) / 1000) + " us");
+	}
+}
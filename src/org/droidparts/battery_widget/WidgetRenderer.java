@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Draws the battery of the scalable design into a bitmap of the exact widget
+ * size, so no launcher has to scale it. Rendered bitmaps are kept in an LRU
+ * cache bounded by byte size; a bitmap dropped from the cache goes to a small
+ * pool and gets redrawn by the next miss of the same size. A bitmap returned
+ * must be sent to the launcher before the renderer is asked again.
+ */
+public class WidgetRenderer {
+
+	private static final int MAX_CACHE_BYTES = 1024 * 1024;
+	private static final int MAX_POOL_SIZE = 4;
+
+	private static final int COLOR_FRAME = 0xffe0e0e0;
+	private static final int COLOR_FULL = 0xff4cbf3f;
+	private static final int COLOR_LOW = 0xffe8a317;
+	private static final int COLOR_CRITICAL = 0xffd8352a;
+	private static final int COLOR_LIGHTNING = 0xfffff35c;
+
+	private final LinkedHashMap<Long, Bitmap> mCache = new LinkedHashMap<Long, Bitmap>(16, 0.75f, true);
+	private final ArrayList<Bitmap> mPool = new ArrayList<Bitmap>(MAX_POOL_SIZE);
+	private int mCacheBytes;
+
+	// drawing state, reused
+	private final Canvas mCanvas = new Canvas();
+	private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final RectF mRect = new RectF();
+	private final Path mPath = new Path();
+
+	/**
+	 * Returns battery bitmap of given size in pixels, drawn for given screen
+	 * density in dpi.
+	 */
+	public synchronized Bitmap getBitmap(int design, int chargeLevel, boolean charging, int width, int height,
+			int density) {
+		chargeLevel = Math.max(0, Math.min(chargeLevel, 100));
+		Long key = Long.valueOf(getKey(design, chargeLevel, charging, width, height, density));
+		Bitmap bitmap = mCache.get(key);
+		if (bitmap != null) {
+			return bitmap;
+		}
+
+		bitmap = obtain(width, height);
+		BatteryWidget.setDensity(bitmap, density);
+		draw(bitmap, chargeLevel, charging);
+
+		mCache.put(key, bitmap);
+		mCacheBytes += getByteCount(bitmap);
+		Iterator<Map.Entry<Long, Bitmap>> it = mCache.entrySet().iterator();
+		while (mCacheBytes > MAX_CACHE_BYTES && it.hasNext()) {
+			Bitmap evicted = it.next().getValue();
+			if (evicted == bitmap) {
+				break; // keep at least the one just drawn
+			}
+			it.remove();
+			mCacheBytes -= getByteCount(evicted);
+			recycle(evicted);
+		}
+		return bitmap;
+	}
+
+	public synchronized void clear() {
+		for (Bitmap bitmap : mCache.values()) {
+			bitmap.recycle();
+		}
+		mCache.clear();
+		mCacheBytes = 0;
+		for (Bitmap bitmap : mPool) {
+			bitmap.recycle();
+		}
+		mPool.clear();
+	}
+
+	private Bitmap obtain(int width, int height) {
+		for (int i = mPool.size() - 1; i >= 0; i--) {
+			Bitmap bitmap = mPool.get(i);
+			if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+				mPool.remove(i);
+				bitmap.eraseColor(Color.TRANSPARENT);
+				return bitmap;
+			}
+		}
+		return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+	}
+
+	private void recycle(Bitmap bitmap) {
+		if (mPool.size() == MAX_POOL_SIZE) {
+			mPool.remove(0).recycle();
+		}
+		mPool.add(bitmap);
+	}
+
+	private void draw(Bitmap bitmap, int chargeLevel, boolean charging) {
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+		Canvas canvas = mCanvas;
+		canvas.setBitmap(bitmap);
+		Paint paint = mPaint;
+
+		// battery body keeps its proportions and fills the height
+		float capHeight = height * 0.08f;
+		float bodyHeight = height - capHeight;
+		float bodyWidth = Math.min(width, bodyHeight * 0.6f);
+		float left = (width - bodyWidth) / 2;
+		float stroke = Math.max(1, bodyWidth * 0.07f);
+		float radius = bodyWidth * 0.1f;
+
+		// cap
+		paint.setStyle(Paint.Style.FILL);
+		paint.setColor(COLOR_FRAME);
+		mRect.set(left + bodyWidth * 0.3f, 0, left + bodyWidth * 0.7f, capHeight + radius);
+		canvas.drawRoundRect(mRect, radius / 2, radius / 2, paint);
+
+		// level
+		float inset = stroke * 1.5f;
+		float fillTop = capHeight + inset;
+		float fillBottom = height - inset;
+		paint.setColor(chargeLevel <= 15 ? COLOR_CRITICAL : chargeLevel <= 30 ? COLOR_LOW : COLOR_FULL);
+		mRect.set(left + inset, fillBottom - (fillBottom - fillTop) * chargeLevel / 100, left + bodyWidth - inset,
+				fillBottom);
+		canvas.drawRect(mRect, paint);
+
+		// frame
+		paint.setStyle(Paint.Style.STROKE);
+		paint.setStrokeWidth(stroke);
+		paint.setColor(COLOR_FRAME);
+		mRect.set(left + stroke / 2, capHeight + stroke / 2, left + bodyWidth - stroke / 2, height - stroke / 2);
+		canvas.drawRoundRect(mRect, radius, radius, paint);
+
+		float centerX = width / 2f;
+		float centerY = capHeight + bodyHeight / 2;
+
+		if (charging) {
+			float w = bodyWidth * 0.45f;
+			float h = bodyHeight * 0.6f;
+			float x = centerX - w / 2;
+			float y = centerY - h / 2;
+			mPath.reset();
+			mPath.moveTo(x + w * 0.65f, y);
+			mPath.lineTo(x, y + h * 0.58f);
+			mPath.lineTo(x + w * 0.45f, y + h * 0.58f);
+			mPath.lineTo(x + w * 0.35f, y + h);
+			mPath.lineTo(x + w, y + h * 0.42f);
+			mPath.lineTo(x + w * 0.55f, y + h * 0.42f);
+			mPath.close();
+			paint.setStyle(Paint.Style.FILL);
+			paint.setColor(COLOR_LIGHTNING);
+			paint.setShadowLayer(stroke, 0, 0, Color.BLACK);
+			canvas.drawPath(mPath, paint);
+			paint.clearShadowLayer();
+		} else if (chargeLevel < 100) {
+			paint.setStyle(Paint.Style.FILL);
+			paint.setColor(Color.WHITE);
+			paint.setFakeBoldText(true);
+			paint.setTextAlign(Paint.Align.CENTER);
+			paint.setTextSize(bodyWidth * 0.45f);
+			paint.setShadowLayer(stroke, 0, 0, Color.BLACK);
+			canvas.drawText(RenderConfig.getLevelText(chargeLevel), centerX, centerY - (paint.ascent()
+					+ paint.descent()) / 2, paint);
+			paint.clearShadowLayer();
+		}
+	}
+
+	private static long getKey(int design, int chargeLevel, boolean charging, int width, int height, int density) {
+		// 8 bits design, 7 bits level, 1 bit charging, 14 bits per size, 12 bits density
+		return ((long) (design & 0xff) << 48) | ((long) chargeLevel << 41) | ((charging ? 1L : 0L) << 40)
+				| ((long) (width & 0x3fff) << 26) | ((long) (height & 0x3fff) << 12) | (density & 0xfff);
+	}
+
+	private static int getByteCount(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import static org.droidparts.battery_widget.BatteryWidget.TAG;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Background thread rendering the widgets. Every poster owns a
+ * {@link Mailbox}, posting only stores the state in its single slot, newer
+ * state replaces older one not rendered yet, and schedules a render if none
+ * is scheduled. A burst of posts therefore ends in one render of the newest
+ * state and the posting thread never waits for the widget host. Renders are
+ * counted in the metrics of the mailbox they were posted to.
+ */
+public class WidgetUpdateThread {
+
+	private static WidgetUpdateThread sInstance;
+
+	private final Context mContext;
+	private final Handler mHandler;
+
+	/**
+	 * Single slot mailbox of one poster.
+	 */
+	public final class Mailbox implements Runnable {
+
+		// latest posted state, packed by BatteryState
+		private final AtomicLong mState = new AtomicLong(BatteryState.INITIAL);
+		private final AtomicBoolean mScheduled = new AtomicBoolean();
+		private final ServiceMetrics mMetrics;
+
+		private Mailbox(ServiceMetrics metrics) {
+			mMetrics = metrics;
+		}
+
+		/**
+		 * Schedules rendering of given state packed by {@link BatteryState},
+		 * may be called from any thread.
+		 */
+		public void post(long state) {
+			mState.set(state);
+			if (mMetrics != null) {
+				mMetrics.updatesPushed.incrementAndGet();
+			}
+			if (mScheduled.compareAndSet(false, true)) {
+				mHandler.post(this);
+			}
+		}
+
+		public void run() {
+			// cleared first, a post arriving during the render schedules another one
+			mScheduled.set(false);
+			long state = mState.get();
+
+			long start = System.nanoTime();
+			BatteryWidget.updateWidgets(mContext, BatteryState.getLevel(state), BatteryState.isCharging(state),
+					BatteryState.getRemainingMinutes(state));
+			long duration = System.nanoTime() - start;
+
+			if (mMetrics != null) {
+				mMetrics.onUpdateRendered(duration);
+			}
+			Log.d(TAG, "update took " + (duration / 1000000) + " ms");
+		}
+	}
+
+	private WidgetUpdateThread(Context context) {
+		mContext = context;
+		HandlerThread thread = new HandlerThread("widget-update", Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		mHandler = new Handler(thread.getLooper());
+	}
+
+	public static synchronized WidgetUpdateThread getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new WidgetUpdateThread(context.getApplicationContext());
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Creates a mailbox rendering on this thread.
+	 *
+	 * @param metrics receives posted and rendered updates, may be null
+	 */
+	public Mailbox createMailbox(ServiceMetrics metrics) {
+		return new Mailbox(metrics);
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.app.AlarmManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+
+/**
+ * Application context of the JVM harnesses. Files go to given directory,
+ * preferences are kept in memory and broadcasts are delivered on the main
+ * looper the way the system does, sticky ones to every new receiver too.
+ */
+public class FakeContext extends Context {
+
+	private static final class Registration {
+		final BroadcastReceiver receiver;
+		final IntentFilter filter;
+
+		Registration(BroadcastReceiver receiver, IntentFilter filter) {
+			this.receiver = receiver;
+			this.filter = filter;
+		}
+	}
+
+	private final File mDir;
+	private final Resources mResources = new Resources();
+	private final ApplicationInfo mApplicationInfo = new ApplicationInfo();
+	private final PowerManager mPowerManager = new PowerManager();
+	private final AlarmManager mAlarmManager = new AlarmManager();
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+	private final HashMap<String, Preferences> mPreferences = new HashMap<String, Preferences>();
+	private final ArrayList<Registration> mReceivers = new ArrayList<Registration>();
+	private final HashMap<String, Intent> mSticky = new HashMap<String, Intent>();
+	private final ArrayList<Intent> mStartedServices = new ArrayList<Intent>();
+
+	private final PackageManager mPackageManager = new PackageManager() {
+		@Override
+		public ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException {
+			if (!getPackageName().equals(packageName)) {
+				throw new NameNotFoundException();
+			}
+			return mApplicationInfo;
+		}
+	};
+
+	public FakeContext(File dir) {
+		mDir = dir;
+	}
+
+	public void setDebuggable(boolean debuggable) {
+		if (debuggable) {
+			mApplicationInfo.flags |= ApplicationInfo.FLAG_DEBUGGABLE;
+		} else {
+			mApplicationInfo.flags &= ~ApplicationInfo.FLAG_DEBUGGABLE;
+		}
+	}
+
+	public PowerManager getPowerManager() {
+		return mPowerManager;
+	}
+
+	/**
+	 * Returns intents passed to {@link #startService(Intent)} so far.
+	 */
+	public ArrayList<Intent> getStartedServices() {
+		return mStartedServices;
+	}
+
+	/**
+	 * Delivers given intent to the matching receivers on the main looper,
+	 * returns the number of receivers.
+	 */
+	public int sendBroadcast(Intent intent) {
+		int count = 0;
+		for (Registration registration : new ArrayList<Registration>(mReceivers)) {
+			if (registration.filter.hasAction(intent.getAction())) {
+				deliver(registration, intent);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Like {@link #sendBroadcast(Intent)}, and keeps given intent for
+	 * receivers registered later.
+	 */
+	public int sendStickyBroadcast(Intent intent) {
+		mSticky.put(intent.getAction(), new Intent(intent));
+		return sendBroadcast(intent);
+	}
+
+	private void deliver(final Registration registration, final Intent intent) {
+		mMainHandler.post(new Runnable() {
+			public void run() {
+				if (mReceivers.contains(registration)) { // not unregistered meanwhile
+					registration.receiver.onReceive(FakeContext.this, intent);
+				}
+			}
+		});
+	}
+
+	@Override
+	public String getPackageName() {
+		return "org.droidparts.battery_widget";
+	}
+
+	@Override
+	public Context getApplicationContext() {
+		return this;
+	}
+
+	@Override
+	public Resources getResources() {
+		return mResources;
+	}
+
+	@Override
+	public PackageManager getPackageManager() {
+		return mPackageManager;
+	}
+
+	@Override
+	public File getFilesDir() {
+		return mDir;
+	}
+
+	@Override
+	public File getFileStreamPath(String name) {
+		return new File(mDir, name);
+	}
+
+	@Override
+	public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+		Preferences preferences = mPreferences.get(name);
+		if (preferences == null) {
+			preferences = new Preferences();
+			mPreferences.put(name, preferences);
+		}
+		return preferences;
+	}
+
+	@Override
+	public Object getSystemService(String name) {
+		if (POWER_SERVICE.equals(name)) {
+			return mPowerManager;
+		} else if (ALARM_SERVICE.equals(name)) {
+			return mAlarmManager;
+		}
+		return null;
+	}
+
+	@Override
+	public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+		Intent sticky = null;
+		for (int i = 0; i < filter.countActions() && sticky == null; i++) {
+			sticky = mSticky.get(filter.getAction(i));
+		}
+		if (receiver != null) {
+			Registration registration = new Registration(receiver, filter);
+			mReceivers.add(registration);
+			if (sticky != null) {
+				deliver(registration, new Intent(sticky));
+			}
+		}
+		return sticky != null ? new Intent(sticky) : null;
+	}
+
+	@Override
+	public void unregisterReceiver(BroadcastReceiver receiver) {
+		for (int i = mReceivers.size() - 1; i >= 0; i--) {
+			if (mReceivers.get(i).receiver == receiver) {
+				mReceivers.remove(i);
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Receiver not registered: " + receiver);
+	}
+
+	@Override
+	public ComponentName startService(Intent service) {
+		mStartedServices.add(service);
+		return service.getComponent();
+	}
+
+	@Override
+	public boolean stopService(Intent service) {
+		return true;
+	}
+
+	@Override
+	public Context createPackageContext(String packageName, int flags) throws PackageManager.NameNotFoundException {
+		throw new PackageManager.NameNotFoundException();
+	}
+
+	/**
+	 * Preferences kept in memory, commits always succeed.
+	 */
+	private static final class Preferences implements SharedPreferences {
+		private final HashMap<String, Object> mValues = new HashMap<String, Object>();
+
+		public synchronized Map<String, ?> getAll() {
+			return new HashMap<String, Object>(mValues);
+		}
+
+		public Editor edit() {
+			final HashMap<String, Object> changes = new HashMap<String, Object>();
+			return new Editor() {
+				public Editor putString(String key, String value) {
+					changes.put(key, value);
+					return this;
+				}
+
+				public Editor putInt(String key, int value) {
+					changes.put(key, Integer.valueOf(value));
+					return this;
+				}
+
+				public Editor putBoolean(String key, boolean value) {
+					changes.put(key, Boolean.valueOf(value));
+					return this;
+				}
+
+				public Editor remove(String key) {
+					changes.put(key, null);
+					return this;
+				}
+
+				public boolean commit() {
+					synchronized (Preferences.this) {
+						for (Map.Entry<String, Object> entry : changes.entrySet()) {
+							if (entry.getValue() == null) {
+								mValues.remove(entry.getKey());
+							} else {
+								mValues.put(entry.getKey(), entry.getValue());
+							}
+						}
+					}
+					return true;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Checks that {@link HistoryLog} keeps samples sorted by time, which
+ * {@link HistoryLog#findIndex(long)} and the rollup rebuild rely on.
+ */
+public class HistoryLogTest extends TestCase {
+
+	private File mFile;
+
+	protected void setUp() throws IOException {
+		mFile = File.createTempFile("history", ".log");
+	}
+
+	protected void tearDown() {
+		mFile.delete();
+	}
+
+	public void testClockGoesBack() throws IOException {
+		HistoryLog log = new HistoryLog(mFile, 8);
+		assertEquals("stored time", 1000, append(log, 1000, 50));
+		assertEquals("stored time", 2000, append(log, 2000, 49));
+		assertEquals("clock set back", 2000, append(log, 1500, 48));
+		assertEquals("clock set back again", 2000, append(log, 500, 47));
+		assertEquals("clock ahead", 3000, append(log, 3000, 46));
+
+		assertEquals("size", 5, log.size());
+		assertSorted(log);
+		assertEquals("level kept", 47, log.getLevel(3));
+		assertEquals("first at 2000", 1, log.findIndex(2000));
+		assertEquals("first after 2000", 4, log.findIndex(2001));
+		assertEquals("after all", 5, log.findIndex(3001));
+	}
+
+	public void testClockGoesBackAfterReopen() throws IOException {
+		HistoryLog log = new HistoryLog(mFile, 8);
+		append(log, 5000, 50);
+		log.flush();
+
+		log = new HistoryLog(mFile, 8);
+		assertEquals("last time restored", 5000, append(log, 4000, 49));
+		assertSorted(log);
+	}
+
+	public void testWrapAround() throws IOException {
+		HistoryLog log = new HistoryLog(mFile, 8);
+		for (int i = 0; i < 20; i++) {
+			// every third sample from a clock set back by a minute
+			append(log, i * 1000 - (i % 3 == 2 ? 60000 : 0), 100 - i);
+		}
+		assertEquals("size", 8, log.size());
+		assertSorted(log);
+		assertEquals("oldest kept", 12, 100 - log.getLevel(0));
+	}
+
+	private static long append(HistoryLog log, long time, int level) {
+		return log.append(time, level, BatterySource.STATUS_DISCHARGING, 2, 0, 300, 3800, "Li-ion");
+	}
+
+	private static void assertSorted(HistoryLog log) {
+		for (int i = 1; i < log.size(); i++) {
+			assertTrue("sorted at " + i, log.getTime(i - 1) <= log.getTime(i));
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks {@link IconTable} against the level-list it was made from, in
+ * which designs are encoded as level offsets.
+ */
+public class IconTableTest extends TestCase {
+
+	private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+	private static final String DRAWABLE = "@drawable/";
+
+	// level offset of each design in charge_level_icons.xml
+	private static final int[] OFFSETS = { 0, 200, 200, 400 };
+
+	private static final int LEVELS = 101;
+
+	public void testMatchesLevelList() throws Exception {
+		File file = new File(System.getProperty("res.dir", "../res"), "xml/charge_level_icons.xml");
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		NodeList items = factory.newDocumentBuilder().parse(file).getElementsByTagName("item");
+		assertTrue("items in " + file, items.getLength() > 0);
+
+		int[][] covered = new int[OFFSETS.length][LEVELS];
+		for (int i = 0; i < items.getLength(); i++) {
+			Element item = (Element) items.item(i);
+			int min = Integer.parseInt(item.getAttributeNS(ANDROID_NS, "minLevel"));
+			int max = Integer.parseInt(item.getAttributeNS(ANDROID_NS, "maxLevel"));
+			String name = item.getAttributeNS(ANDROID_NS, "drawable");
+			assertTrue("drawable reference " + name, name.startsWith(DRAWABLE));
+			int drawable = R.drawable.class.getField(name.substring(DRAWABLE.length())).getInt(null);
+
+			for (int design = 0; design < OFFSETS.length; design++) {
+				for (int level = 0; level < LEVELS; level++) {
+					int encoded = OFFSETS[design] + level;
+					if (encoded >= min && encoded <= max) {
+						assertEquals("design " + design + ", level " + level, drawable,
+								IconTable.getIcon(design, level));
+						covered[design][level]++;
+					}
+				}
+			}
+		}
+
+		for (int design = 0; design < OFFSETS.length; design++) {
+			for (int level = 0; level < LEVELS; level++) {
+				assertEquals("items for design " + design + ", level " + level, 1, covered[design][level]);
+			}
+		}
+	}
+
+	public void testOutOfRange() {
+		assertEquals("unknown design", IconTable.getIcon(0, 50), IconTable.getIcon(OFFSETS.length, 50));
+		assertEquals("negative design", IconTable.getIcon(0, 50), IconTable.getIcon(-1, 50));
+		assertEquals("negative level", IconTable.getIcon(1, 0), IconTable.getIcon(1, -1));
+		assertEquals("level above 100", IconTable.getIcon(1, 100), IconTable.getIcon(1, 255));
+	}
+}
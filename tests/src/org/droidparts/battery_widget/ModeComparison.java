@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Intent;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Compares the resident service with the service-less mode on the JVM,
+ * against the framework stubs: heap retained by each mode after a day of
+ * battery updates, and the time the app spends on one widget update, from
+ * the battery broadcast to the update calls. Run with:
+ *
+ * <pre>
+ * ant -f tests/build.xml compare-modes
+ * </pre>
+ *
+ * What only a device shows is left out: the process the service keeps
+ * resident, see <code>adb shell dumpsys meminfo</code>, and the process
+ * start the service-less mode may pay per update.
+ */
+public class ModeComparison {
+
+	private static final int DAY = 24 * 60; // one battery broadcast per minute
+	private static final int WARMUP = 20000;
+	private static final int ITERATIONS = 20000;
+	private static final int WIDGETS = 3;
+
+	private final FakeContext mContext;
+	private final Intent mBattery = new Intent(Intent.ACTION_BATTERY_CHANGED);
+	private int mLevel;
+
+	private ModeComparison(FakeContext context) {
+		mContext = context;
+		mBattery.putExtra("scale", 100);
+		mBattery.putExtra("plugged", 0);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Looper.prepareMainLooper();
+		File dir = File.createTempFile("modes", "");
+		dir.delete();
+		dir.mkdir();
+		FakeContext context = new FakeContext(dir);
+		int[] appWidgetIds = new int[WIDGETS];
+		for (int i = 0; i < WIDGETS; i++) {
+			appWidgetIds[i] = i + 1;
+		}
+		AppWidgetManager.getInstance(context).setAppWidgetIds(appWidgetIds);
+		new ModeComparison(context).run();
+	}
+
+	private void run() throws InterruptedException {
+		System.out.println(WIDGETS + " widgets, heap after " + DAY + " updates, latency of " + ITERATIONS
+				+ " updates");
+
+		// service-less: the sticky intent is read on every update
+		long base = usedHeap();
+		for (int i = 0; i < DAY; i++) {
+			updateServiceLess();
+		}
+		long serviceLessHeap = usedHeap() - base;
+		for (int i = 0; i < WARMUP; i++) {
+			updateServiceLess();
+		}
+		long[] serviceLess = new long[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			updateServiceLess();
+			serviceLess[i] = System.nanoTime() - start;
+		}
+
+		// service: broadcasts go to its receiver, renders through the filter
+		base = usedHeap();
+		mContext.getPowerManager().setScreenOn(true);
+		BatteryService service = new BatteryService();
+		service.attach(mContext);
+		service.onStart(new Intent(mContext, BatteryService.class), 1);
+		for (int i = 0; i < DAY; i++) {
+			updateService();
+		}
+		long serviceHeap = usedHeap() - base;
+		for (int i = 0; i < WARMUP; i++) {
+			updateService();
+		}
+		long[] resident = new long[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			updateService();
+			resident[i] = System.nanoTime() - start;
+		}
+		service.onDestroy();
+
+		report("service-less", serviceLessHeap, serviceLess);
+		report("service", serviceHeap, resident);
+	}
+
+	private void updateServiceLess() {
+		nextLevel();
+		ServicelessUpdater.update(mContext);
+	}
+
+	private void updateService() {
+		nextLevel();
+		// a minute later, merge windows have passed and the render is done
+		Looper.loopUntil(SystemClock.uptimeMillis() + 60 * 1000);
+	}
+
+	private void nextLevel() {
+		mLevel = mLevel > 1 ? mLevel - 1 : 100;
+		mBattery.putExtra("level", mLevel);
+		mContext.sendStickyBroadcast(mBattery);
+	}
+
+	private static void report(String mode, long heap, long[] nanos) {
+		Arrays.sort(nanos);
+		System.out.println(String.format("%-14s %8d bytes retained %8.1f us median %8.1f us p99", mode, heap,
+				nanos[nanos.length / 2] / 1000.0, nanos[nanos.length * 99 / 100] / 1000.0));
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
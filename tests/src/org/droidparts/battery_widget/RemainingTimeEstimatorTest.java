@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Replays synthetic battery traces through {@link RemainingTimeEstimator}
+ * and checks accuracy of the estimates and cost per sample.
+ */
+public class RemainingTimeEstimatorTest extends TestCase {
+
+	private static final long MINUTE = 60 * 1000L;
+	private static final long HOUR = 60 * MINUTE;
+
+	private RemainingTimeEstimator mEstimator;
+	private Random mRandom;
+	private long mTime;
+	private int mLevel;
+
+	protected void setUp() {
+		mEstimator = new RemainingTimeEstimator();
+		mRandom = new Random(42);
+		mTime = 1300000000000L;
+	}
+
+	/**
+	 * Feeds level steps of one percent down or up to given level at given
+	 * rate in percent per hour. Step intervals are jittered by given
+	 * fraction, every step also gets a sample without level change.
+	 */
+	private void replay(int toLevel, boolean charging, float rate, float jitter) {
+		long step = (long) (HOUR / rate);
+		while (mLevel != toLevel) {
+			long interval = step + (long) (step * jitter * (2 * mRandom.nextFloat() - 1));
+			mEstimator.addSample(mTime + interval / 2, mLevel, charging); // temperature or voltage change
+			mTime += interval;
+			mLevel += toLevel > mLevel ? 1 : -1;
+			mEstimator.addSample(mTime, mLevel, charging);
+		}
+	}
+
+	private void start(int level, boolean charging) {
+		mLevel = level;
+		mEstimator.addSample(mTime, level, charging);
+	}
+
+	public void testUnknownWithoutSamples() {
+		assertEquals("remaining", RemainingTimeEstimator.UNKNOWN, mEstimator.getRemainingMinutes());
+		start(80, false);
+		assertEquals("remaining after one sample", RemainingTimeEstimator.UNKNOWN, mEstimator.getRemainingMinutes());
+	}
+
+	public void testDischarge() {
+		start(100, false);
+		replay(95, false, 10, 0.15f);
+		while (mLevel > 5) {
+			replay(mLevel - 5, false, 10, 0.15f);
+			assertNear("minutes to empty at " + mLevel + "%", mLevel * 6, mEstimator.getRemainingMinutes(), 0.2);
+		}
+		assertNear("discharge rate", 10, mEstimator.getDischargeRate(), 0.2);
+	}
+
+	public void testCharge() {
+		start(10, true);
+		replay(15, true, 40, 0.15f);
+		while (mLevel < 95) {
+			replay(mLevel + 5, true, 40, 0.15f);
+			assertNear("minutes to full at " + mLevel + "%", (100 - mLevel) * 1.5, mEstimator.getRemainingMinutes(),
+					0.2);
+		}
+		assertNear("charge rate", 40, mEstimator.getChargeRate(), 0.2);
+	}
+
+	public void testRateChange() {
+		start(100, false);
+		replay(80, false, 10, 0);
+		replay(70, false, 30, 0);
+		assertNear("minutes to empty after rate change", 70 * 2, mEstimator.getRemainingMinutes(), 0.1);
+	}
+
+	public void testPlugUnplug() {
+		start(80, false);
+		replay(60, false, 10, 0.1f);
+
+		// charge rate is not known yet
+		start(60, true);
+		assertEquals("first charge", RemainingTimeEstimator.UNKNOWN, mEstimator.getRemainingMinutes());
+		replay(90, true, 40, 0.1f);
+		assertNear("minutes to full", 10 * 1.5, mEstimator.getRemainingMinutes(), 0.2);
+
+		// rates learned before are used right after the mode change
+		start(90, false);
+		assertNear("minutes to empty after unplug", 90 * 6, mEstimator.getRemainingMinutes(), 0.2);
+		replay(50, false, 10, 0.1f);
+		start(50, true);
+		assertNear("minutes to full after plug", 50 * 1.5, mEstimator.getRemainingMinutes(), 0.2);
+
+		// the interval started before plugging in is not used
+		mTime += HOUR;
+		start(49, false);
+		replay(40, false, 10, 0);
+		assertNear("minutes to empty", 40 * 6, mEstimator.getRemainingMinutes(), 0.2);
+	}
+
+	public void testLongGapIgnored() {
+		start(100, false);
+		replay(60, false, 10, 0);
+		mTime += 8 * HOUR; // switched off
+		mLevel--;
+		mEstimator.addSample(mTime, mLevel, false);
+		assertNear("discharge rate after gap", 10, mEstimator.getDischargeRate(), 0.01);
+	}
+
+	public void testCostPerSample() {
+		// warm up
+		long small = measure(1 << 16);
+		small = Math.min(small, measure(1 << 16));
+		long large = Math.min(measure(1 << 20), measure(1 << 20));
+		double smallPerSample = (double) small / (1 << 16);
+		double largePerSample = (double) large / (1 << 20);
+		assertTrue("per sample cost grows with trace length: " + smallPerSample + " ns, then " + largePerSample
+				+ " ns", largePerSample < smallPerSample * 3 + 20);
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+			long id = Thread.currentThread().getId();
+			long before = hotspot.getThreadAllocatedBytes(id);
+			measure(1 << 20);
+			long allocated = hotspot.getThreadAllocatedBytes(id) - before;
+			assertTrue("allocated " + allocated + " bytes for 1M samples", allocated < 1024);
+		}
+	}
+
+	/**
+	 * Returns nanoseconds spent feeding given number of samples, a saw tooth
+	 * of discharge and charge cycles.
+	 */
+	private long measure(int samples) {
+		RemainingTimeEstimator estimator = new RemainingTimeEstimator();
+		long time = 0;
+		int level = 100;
+		boolean charging = false;
+		int sink = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < samples; i++) {
+			time += 6 * MINUTE;
+			if (charging) {
+				charging = ++level < 100;
+			} else {
+				charging = --level == 0;
+			}
+			estimator.addSample(time, level, charging);
+			sink += estimator.getRemainingMinutes();
+		}
+		long duration = System.nanoTime() - start;
+		return sink == Integer.MIN_VALUE ? 0 : duration;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.appwidget.AppWidgetManager;
+
+/**
+ * Checks how widget instances are grouped for rendering and how many update
+ * calls the groups cost.
+ */
+public class RenderConfigTest extends TestCase {
+
+	private File mDir;
+	private FakeContext mContext;
+	private AppWidgetManager mWidgetManager;
+
+	protected void setUp() throws IOException {
+		mDir = File.createTempFile("render", "");
+		mDir.delete();
+		mDir.mkdir();
+		mContext = new FakeContext(mDir);
+		mWidgetManager = AppWidgetManager.getInstance(mContext);
+		// three instances opening their configuration, one launching an app
+		mWidgetManager.setAppWidgetIds(new int[] { 1, 2, 3, 4 });
+		SettingsStore.getInstance(mContext).edit().setActivity(4, "com.example", "com.example.Clock", "Clock")
+				.apply();
+		RenderConfig.invalidate();
+	}
+
+	protected void tearDown() {
+		SettingsStore.getInstance(mContext).edit().removeConfiguration(4).apply();
+		mWidgetManager.setAppWidgetIds(new int[0]);
+		RenderConfig.invalidate();
+		mDir.delete();
+	}
+
+	public void testDefaultInstancesGrouped() {
+		RenderConfig[] groups = RenderConfig.getGroups(mContext);
+		assertEquals("groups", 2, groups.length);
+
+		RenderConfig defaults = groups[0];
+		assertEquals("default instances", 3, defaults.appWidgetIds.length);
+		assertFalse("own click intents", defaults.hasSharedClickIntent());
+		for (int i = 0; i < defaults.appWidgetIds.length; i++) {
+			// the request code keeps the pending intents of the instances apart
+			assertEquals("request code", defaults.appWidgetIds[i], defaults.getClickIntent(i).getRequestCode());
+		}
+
+		assertEquals("app instances", 1, groups[1].appWidgetIds.length);
+		assertTrue("shared click intent", groups[1].hasSharedClickIntent());
+	}
+
+	public void testUpdateCalls() {
+		int updates = mWidgetManager.getUpdateCount();
+		int partialUpdates = mWidgetManager.getPartialUpdateCount();
+
+		BatteryWidget.requestFullUpdate();
+		BatteryWidget.updateWidgets(mContext, 50, false, RemainingTimeEstimator.UNKNOWN);
+		assertEquals("full update per instance", 4, mWidgetManager.getUpdateCount() - updates);
+
+		BatteryWidget.updateWidgets(mContext, 49, false, RemainingTimeEstimator.UNKNOWN);
+		assertEquals("no full update", 4, mWidgetManager.getUpdateCount() - updates);
+		assertEquals("partial update per group", 2, mWidgetManager.getPartialUpdateCount() - partialUpdates);
+	}
+}
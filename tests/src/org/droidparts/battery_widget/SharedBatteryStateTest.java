@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hammers {@link SharedBatteryState} with one writer and several readers,
+ * each mapping the file on its own as readers in other processes do, and
+ * checks that no reader ever sees fields of different snapshots.
+ */
+public class SharedBatteryStateTest extends TestCase {
+
+	private static final int READERS = 4;
+	private static final long DURATION = 2000; // ms
+
+	private File mFile;
+
+	protected void setUp() throws Exception {
+		mFile = File.createTempFile("state", ".bin");
+		mFile.delete();
+	}
+
+	protected void tearDown() {
+		mFile.delete();
+	}
+
+	/**
+	 * Snapshot written for given time, all fields derive from it so that a
+	 * reader can tell a torn one.
+	 */
+	private static void publish(SharedBatteryState writer, long time) {
+		int level = (int) (time % 101);
+		writer.publish(time, level, (time & 1) == 0, level * 7);
+	}
+
+	private static boolean isConsistent(SharedBatteryState.Snapshot snapshot) {
+		int level = (int) (snapshot.time % 101);
+		return snapshot.level == level && snapshot.charging == ((snapshot.time & 1) == 0)
+				&& snapshot.remainingMinutes == level * 7;
+	}
+
+	public void testNothingPublished() throws Exception {
+		SharedBatteryState writer = SharedBatteryState.openWriter(mFile);
+		SharedBatteryState reader = SharedBatteryState.openReader(mFile);
+		assertEquals("before first publish", null, reader.read());
+		publish(writer, 42);
+		SharedBatteryState.Snapshot snapshot = reader.read();
+		assertTrue("after publish", snapshot != null && snapshot.time == 42 && isConsistent(snapshot));
+		reader.close();
+		writer.close();
+	}
+
+	public void testWriterRestart() throws Exception {
+		SharedBatteryState writer = SharedBatteryState.openWriter(mFile);
+		publish(writer, 1000);
+		writer.close();
+
+		// a new writer continues with an even sequence, the old state stays readable
+		writer = SharedBatteryState.openWriter(mFile);
+		SharedBatteryState reader = SharedBatteryState.openReader(mFile);
+		SharedBatteryState.Snapshot snapshot = reader.read();
+		assertTrue("state of previous writer", snapshot != null && snapshot.time == 1000);
+		publish(writer, 1001);
+		assertEquals("state of new writer", 1001, reader.read().time);
+		reader.close();
+		writer.close();
+	}
+
+	public void testConcurrentReaders() throws Exception {
+		final SharedBatteryState writer = SharedBatteryState.openWriter(mFile);
+		publish(writer, 1);
+
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicLong reads = new AtomicLong();
+		final AtomicLong torn = new AtomicLong();
+		final AtomicLong backwards = new AtomicLong();
+		final Throwable[] errors = new Throwable[READERS];
+		Thread[] readers = new Thread[READERS];
+		for (int i = 0; i < READERS; i++) {
+			final int index = i;
+			readers[i] = new Thread("reader-" + i) {
+				public void run() {
+					try {
+						SharedBatteryState reader = SharedBatteryState.openReader(mFile);
+						long last = 0;
+						while (!stop.get()) {
+							SharedBatteryState.Snapshot snapshot = reader.read();
+							if (snapshot == null) {
+								continue; // writer too fast, allowed
+							}
+							reads.incrementAndGet();
+							if (!isConsistent(snapshot)) {
+								torn.incrementAndGet();
+							}
+							if (snapshot.time < last) {
+								backwards.incrementAndGet();
+							}
+							last = snapshot.time;
+						}
+						reader.close();
+					} catch (Throwable e) {
+						errors[index] = e;
+					}
+				}
+			};
+			readers[i].start();
+		}
+
+		long writes = 1;
+		long end = System.currentTimeMillis() + DURATION;
+		while (System.currentTimeMillis() < end) {
+			publish(writer, ++writes);
+		}
+		stop.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		writer.close();
+
+		for (Throwable error : errors) {
+			if (error != null) {
+				throw new AssertionError(error);
+			}
+		}
+		assertTrue("readers made progress", reads.get() > 0);
+		assertEquals("torn snapshots", 0, torn.get());
+		assertEquals("snapshots going backwards", 0, backwards.get());
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Runs {@link SysfsBatterySource} against a fake power supply tree in a
+ * temporary directory, laid out like <code>/sys/class/power_supply</code>.
+ */
+public class SysfsBatterySourceTest extends TestCase {
+
+	private File mRoot;
+	private SysfsBatterySource mSource;
+
+	protected void setUp() throws IOException {
+		mRoot = File.createTempFile("power_supply", "");
+		mRoot.delete();
+		mRoot.mkdir();
+		mSource = new SysfsBatterySource(mRoot, 1000);
+	}
+
+	protected void tearDown() {
+		mSource.close();
+		delete(mRoot);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Writes an attribute the way sysfs shows it, value and a line feed.
+	 * Rewriting keeps the file, so an open source sees the new value.
+	 */
+	private void write(String supply, String name, String value) throws IOException {
+		File dir = new File(mRoot, supply);
+		dir.mkdir();
+		FileOutputStream out = new FileOutputStream(new File(dir, name));
+		try {
+			out.write((value + "\n").getBytes("US-ASCII"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private void battery(String capacity, String status) throws IOException {
+		write("battery", "type", "Battery");
+		write("battery", "capacity", capacity);
+		write("battery", "status", status);
+	}
+
+	private void chargers(int ac, int usb) throws IOException {
+		write("ac", "type", "Mains");
+		write("ac", "online", String.valueOf(ac));
+		write("usb", "type", "USB");
+		write("usb", "online", String.valueOf(usb));
+	}
+
+	public void testFullTree() throws IOException {
+		battery("57", "Charging");
+		write("battery", "current_now", "-350000");
+		write("battery", "voltage_now", "4123000");
+		write("battery", "temp", "287");
+		write("battery", "technology", "Li-ion");
+		chargers(0, 1);
+
+		assertTrue("battery found", mSource.open());
+		assertTrue("first read changes", mSource.read());
+		assertEquals("level", 57, mSource.getLevel());
+		assertEquals("status", BatterySource.STATUS_CHARGING, mSource.getStatus());
+		assertEquals("current", -350000, mSource.getCurrent());
+		assertEquals("voltage", 4123, mSource.getVoltage());
+		assertEquals("temperature", 287, mSource.getTemperature());
+		assertEquals("technology", "Li-ion", mSource.getTechnology());
+		assertEquals("plugged", BatterySource.PLUGGED_USB, mSource.getPlugged());
+		assertTrue("charging", mSource.isCharging());
+
+		assertFalse("nothing changed", mSource.read());
+
+		// files stay open and are read again from the start
+		write("battery", "capacity", "100");
+		write("battery", "status", "Full");
+		assertTrue("level changed", mSource.read());
+		assertEquals("new level", 100, mSource.getLevel());
+		assertEquals("new status", BatterySource.STATUS_FULL, mSource.getStatus());
+		assertFalse("not charging at 100%", mSource.isCharging());
+	}
+
+	public void testPlugTypes() throws IOException {
+		battery("50", "Charging");
+		chargers(1, 1);
+		mSource.open();
+		mSource.read();
+		assertEquals("mains before usb", BatterySource.PLUGGED_AC, mSource.getPlugged());
+
+		chargers(0, 0);
+		write("wireless", "type", "Wireless");
+		write("wireless", "online", "1");
+		mSource.open();
+		mSource.read();
+		assertEquals("wireless", 4, mSource.getPlugged());
+
+		write("wireless", "online", "0");
+		write("battery", "status", "Discharging");
+		mSource.read();
+		assertEquals("unplugged", 0, mSource.getPlugged());
+		assertEquals("discharging", BatterySource.STATUS_DISCHARGING, mSource.getStatus());
+	}
+
+	public void testStatus() throws IOException {
+		battery("50", "Not charging");
+		mSource.open();
+		mSource.read();
+		assertEquals("not charging", BatterySource.STATUS_NOT_CHARGING, mSource.getStatus());
+		write("battery", "status", "Unknown");
+		mSource.read();
+		assertEquals("unknown", BatterySource.STATUS_UNKNOWN, mSource.getStatus());
+	}
+
+	public void testMissingFiles() throws IOException {
+		assertFalse("empty root", mSource.open());
+		assertFalse("no root", new SysfsBatterySource(new File(mRoot, "missing"), 1000).open());
+
+		chargers(1, 0);
+		assertFalse("chargers only", mSource.open());
+
+		write("battery", "type", "Battery");
+		assertFalse("battery without capacity", mSource.open());
+
+		write("battery", "capacity", "80");
+		assertTrue("capacity only", mSource.open());
+		mSource.read();
+		assertEquals("level", 80, mSource.getLevel());
+		assertEquals("current", BatterySource.UNKNOWN_CURRENT, mSource.getCurrent());
+		assertEquals("voltage", 0, mSource.getVoltage());
+		assertEquals("status", BatterySource.STATUS_UNKNOWN, mSource.getStatus());
+		assertEquals("technology", null, mSource.getTechnology());
+		assertEquals("plugged", BatterySource.PLUGGED_AC, mSource.getPlugged());
+	}
+
+	public void testNoChargers() throws IOException {
+		battery("80", "Charging");
+		mSource.open();
+		mSource.read();
+		assertEquals("charging without chargers", BatterySource.PLUGGED_AC, mSource.getPlugged());
+
+		write("battery", "status", "Discharging");
+		mSource.read();
+		assertEquals("discharging without chargers", 0, mSource.getPlugged());
+	}
+
+	public void testGarbage() throws IOException {
+		battery("57", "Charging");
+		write("battery", "current_now", "-350000");
+		write("battery", "voltage_now", "4123000");
+		chargers(0, 1);
+		mSource.open();
+		mSource.read();
+
+		// unparsable values keep the last good ones, current becomes unknown
+		battery("full", "charging");
+		write("battery", "current_now", "-");
+		write("battery", "voltage_now", "");
+		mSource.read();
+		assertEquals("level", 57, mSource.getLevel());
+		assertEquals("current", BatterySource.UNKNOWN_CURRENT, mSource.getCurrent());
+		assertEquals("voltage", 4123, mSource.getVoltage());
+		assertEquals("status is case sensitive", BatterySource.STATUS_UNKNOWN, mSource.getStatus());
+		assertEquals("online", BatterySource.PLUGGED_USB, mSource.getPlugged());
+
+		// digits up to the first other character, overflow clamped
+		battery("42%", "Charging");
+		write("battery", "current_now", "99999999999999");
+		write("battery", "voltage_now", "-99999999999999");
+		write("usb", "online", "x1");
+		mSource.read();
+		assertEquals("level with suffix", 42, mSource.getLevel());
+		assertEquals("current clamped", Integer.MAX_VALUE, mSource.getCurrent());
+		assertTrue("voltage clamped", mSource.getVoltage() < 0);
+		assertEquals("online garbage", 0, mSource.getPlugged());
+	}
+
+	public void testMinimumInterval() throws IOException {
+		battery("50", "Discharging");
+		SysfsBatterySource source = new SysfsBatterySource(mRoot, 10);
+		final int[] changes = new int[1];
+		long start = SystemClock.uptimeMillis();
+		source.start(null, new BatterySource.Listener() {
+			public void onBatteryChanged(BatterySource s) {
+				changes[0]++;
+			}
+		});
+		try {
+			assertEquals("read on start", 1, changes[0]);
+			battery("49", "Discharging");
+			Looper.loopUntil(start + SysfsBatterySource.MIN_INTERVAL - 1);
+			assertEquals("polled before the minimum interval", 1, changes[0]);
+			Looper.loopUntil(start + SysfsBatterySource.MIN_INTERVAL);
+			assertEquals("polled", 2, changes[0]);
+		} finally {
+			source.stop(null);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+/**
+ * Base of the plain JVM tests. Public no-argument methods starting with
+ * "test" are run by {@link TestRunner}, each on a new instance.
+ */
+public abstract class TestCase {
+
+	protected void setUp() throws Exception {
+	}
+
+	protected void tearDown() throws Exception {
+	}
+
+	public static void fail(String message) {
+		throw new AssertionError(message);
+	}
+
+	public static void assertTrue(String message, boolean condition) {
+		if (!condition) {
+			fail(message);
+		}
+	}
+
+	public static void assertFalse(String message, boolean condition) {
+		assertTrue(message, !condition);
+	}
+
+	public static void assertEquals(String message, long expected, long actual) {
+		if (expected != actual) {
+			fail(message + ": expected " + expected + ", got " + actual);
+		}
+	}
+
+	public static void assertEquals(String message, Object expected, Object actual) {
+		if (expected == null ? actual != null : !expected.equals(actual)) {
+			fail(message + ": expected " + expected + ", got " + actual);
+		}
+	}
+
+	/**
+	 * Asserts that actual value is within given relative tolerance of the
+	 * expected one.
+	 */
+	public static void assertNear(String message, double expected, double actual, double tolerance) {
+		if (Math.abs(actual - expected) > Math.abs(expected) * tolerance) {
+			fail(message + ": expected " + expected + " +/- " + (tolerance * 100) + "%, got " + actual);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.droidparts.battery_widget;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Runs test methods of given {@link TestCase} classes and exits with a
+ * non-zero status if any of them fails.
+ */
+public class TestRunner {
+
+	public static void main(String[] args) throws Exception {
+		int run = 0;
+		int failed = 0;
+		for (String name : args) {
+			Class<?> cls = Class.forName(name);
+			if (!TestCase.class.isAssignableFrom(cls) || Modifier.isAbstract(cls.getModifiers())) {
+				continue;
+			}
+			for (Method method : cls.getMethods()) {
+				if (!method.getName().startsWith("test") || method.getParameterTypes().length != 0) {
+					continue;
+				}
+				run++;
+				long start = System.currentTimeMillis();
+				TestCase test = (TestCase) cls.getConstructor().newInstance();
+				try {
+					test.setUp();
+					try {
+						method.invoke(test);
+					} finally {
+						test.tearDown();
+					}
+					System.out.println("ok   " + cls.getSimpleName() + "." + method.getName() + " ("
+							+ (System.currentTimeMillis() - start) + " ms)");
+				} catch (Throwable t) {
+					failed++;
+					System.out.println("FAIL " + cls.getSimpleName() + "." + method.getName());
+					(t instanceof InvocationTargetException ? t.getCause() : t).printStackTrace(System.out);
+				}
+			}
+		}
+		System.out.println(run + " tests, " + failed + " failed");
+		System.exit(failed == 0 && run > 0 ? 0 : 1);
+	}
+}
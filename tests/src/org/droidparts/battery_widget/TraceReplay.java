@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+
+/**
+ * Replays a trace written by {@link TraceRecorder} through the receivers of
+ * {@link BatteryService} on the JVM. Battery events become sticky battery
+ * broadcasts and screen events screen broadcasts, delivered in virtual time
+ * by {@link FakeContext}. While the screen is off the service has no
+ * battery receiver, so battery broadcasts reach nobody and the latest one
+ * is delivered when the receiver is registered again, as on the device.
+ * Run with:
+ *
+ * <pre>
+ * ant -f tests/build.xml replay -Dtrace=trace.bin [-Dspeed=1000]
+ * </pre>
+ *
+ * The trace comes from a debug build, see {@link BatteryService}. Speed 1
+ * replays in real time, 0 as fast as possible.
+ */
+public class TraceReplay {
+
+	public static final int MAX_SPEED = 10000;
+
+	private final FakeContext mContext;
+	private final BatteryService mService = new BatteryService();
+
+	// trace, one array element per event
+	private int mSize;
+	private long[] mEventTime = new long[256];
+	private byte[] mEventType = new byte[256];
+	private short[] mEventLevel = new short[256];
+	private short[] mEventScale = new short[256];
+	private byte[] mEventPlugged = new byte[256];
+	private byte[] mEventStatus = new byte[256];
+
+	private long mNow; // trace time of the event being replayed
+	private int mLevelAtScreenOff = -1;
+	private int mDeliveredLevel = -1;
+
+	// statistics
+	int batteryEvents;
+	int delivered;
+	int dropped;
+	int gaps;
+	int changedGaps;
+	int maxLevelJump;
+	long levelJumpSum;
+	long replayTime; // ms
+
+	/**
+	 * Battery broadcasts stamped with the trace time instead of the wall
+	 * clock, so that estimates and logs see the recorded intervals.
+	 */
+	private class TraceBatterySource extends BroadcastBatterySource {
+		@Override
+		public void start(Context context, final Listener listener) {
+			super.start(context, new Listener() {
+				public void onBatteryChanged(BatterySource source) {
+					mTime = mNow;
+					mDeliveredLevel = mLevel;
+					delivered++;
+					listener.onBatteryChanged(source);
+				}
+			});
+		}
+	}
+
+	public TraceReplay(FakeContext context, File trace) {
+		mContext = context;
+		read(trace);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: TraceReplay trace.bin [speed]");
+			System.exit(2);
+		}
+		File trace = new File(args[0]);
+		if (!trace.isFile()) {
+			System.err.println("no trace at " + trace);
+			System.exit(1);
+		}
+		int speed = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+		File dir = File.createTempFile("replay", "");
+		dir.delete();
+		dir.mkdir();
+		FakeContext context = new FakeContext(dir);
+		context.setDebuggable(true);
+		AppWidgetManager.getInstance(context).setAppWidgetIds(new int[] { 1 });
+
+		TraceReplay replay = new TraceReplay(context, trace);
+		replay.run(speed);
+		replay.report(new PrintWriter(System.out, true));
+	}
+
+	/**
+	 * Replays the whole trace at given speed, 1 being real time and 0 as
+	 * fast as possible. Must be called once, from the thread which is used
+	 * as the main thread.
+	 */
+	public void run(int speed) {
+		speed = Math.max(0, Math.min(speed, MAX_SPEED));
+		Looper.prepareMainLooper();
+		mContext.getPowerManager().setScreenOn(true);
+		mService.attach(mContext);
+		mService.onStart(new Intent(mContext, BatteryService.class), 1);
+		mService.setBatterySource(new TraceBatterySource());
+
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < mSize; i++) {
+			long uptime = mEventTime[i] - mEventTime[0];
+			Looper.loopUntil(uptime); // renders due before this event
+			if (speed > 0) {
+				long delay = start + uptime / speed - System.currentTimeMillis();
+				if (delay > 0) {
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+			mNow = mEventTime[i];
+			dispatch(i);
+			Looper.loopUntil(uptime);
+		}
+		// let the last merged update go out
+		if (mSize > 0) {
+			Looper.loopUntil(mEventTime[mSize - 1] - mEventTime[0] + UpdateFilter.DEFAULT_MERGE_WINDOW + 1);
+		}
+		replayTime = System.currentTimeMillis() - start;
+	}
+
+	private void dispatch(int event) {
+		switch (mEventType[event]) {
+		case TraceRecorder.EVENT_BATTERY:
+			batteryEvents++;
+			Intent intent = new Intent(Intent.ACTION_BATTERY_CHANGED);
+			intent.putExtra("level", (int) mEventLevel[event]);
+			intent.putExtra("scale", (int) mEventScale[event]);
+			intent.putExtra("plugged", (int) mEventPlugged[event]);
+			intent.putExtra("status", (int) mEventStatus[event]);
+			if (mContext.sendStickyBroadcast(intent) == 0) {
+				dropped++;
+			}
+			break;
+
+		case TraceRecorder.EVENT_SCREEN_OFF:
+			mContext.getPowerManager().setScreenOn(false);
+			mLevelAtScreenOff = mDeliveredLevel;
+			mContext.sendBroadcast(new Intent(Intent.ACTION_SCREEN_OFF));
+			break;
+
+		case TraceRecorder.EVENT_SCREEN_ON:
+			if (mContext.getPowerManager().isScreenOn()) {
+				break;
+			}
+			mContext.getPowerManager().setScreenOn(true);
+			gaps++;
+			mContext.sendBroadcast(new Intent(Intent.ACTION_SCREEN_ON));
+			// the receiver gets registered and the sticky broadcast delivered
+			Looper.loopUntil(mEventTime[event] - mEventTime[0]);
+			if (mLevelAtScreenOff != -1) {
+				int jump = Math.abs(mDeliveredLevel - mLevelAtScreenOff);
+				if (jump > 0) {
+					changedGaps++;
+					levelJumpSum += jump;
+					maxLevelJump = Math.max(maxLevelJump, jump);
+				}
+			}
+			break;
+		}
+	}
+
+	public void report(PrintWriter out) {
+		AppWidgetManager widgetManager = AppWidgetManager.getInstance(mContext);
+		long duration = mSize > 0 ? mEventTime[mSize - 1] - mEventTime[0] : 0;
+		out.println("trace: " + mSize + " events over " + duration / 60000 + " min, replayed in " + replayTime
+				+ " ms");
+		out.println("battery broadcasts: " + batteryEvents + ", delivered " + delivered
+				+ ", not seen while screen off " + dropped);
+		out.println("screen-off gaps: " + gaps + ", level changed across " + changedGaps + ", max jump "
+				+ maxLevelJump + "%, average jump " + (changedGaps > 0 ? levelJumpSum / changedGaps : 0) + "%");
+		out.println("widget updates: " + widgetManager.getUpdateCount() + " full, "
+				+ widgetManager.getPartialUpdateCount() + " partial");
+		mService.dump(null, out, new String[0]);
+		out.flush();
+	}
+
+	private void read(File file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+			while (true) {
+				long time;
+				try {
+					time = in.readLong();
+				} catch (EOFException e) {
+					break;
+				}
+				if (mSize == mEventTime.length) {
+					grow();
+				}
+				int type = in.readByte();
+				mEventTime[mSize] = time;
+				mEventType[mSize] = (byte) type;
+				if (type == TraceRecorder.EVENT_BATTERY) {
+					mEventLevel[mSize] = in.readShort();
+					mEventScale[mSize] = in.readShort();
+					mEventPlugged[mSize] = in.readByte();
+					mEventStatus[mSize] = in.readByte();
+					in.skipBytes(5); // health, temperature, voltage
+				}
+				mSize++;
+			}
+		} catch (IOException e) {
+			// a record cut by a crash ends the trace
+			System.err.println("cannot read trace, replaying " + mSize + " events: " + e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void grow() {
+		int capacity = mEventTime.length * 2;
+		long[] time = new long[capacity];
+		byte[] type = new byte[capacity];
+		short[] level = new short[capacity];
+		short[] scale = new short[capacity];
+		byte[] plugged = new byte[capacity];
+		byte[] status = new byte[capacity];
+		System.arraycopy(mEventTime, 0, time, 0, mSize);
+		System.arraycopy(mEventType, 0, type, 0, mSize);
+		System.arraycopy(mEventLevel, 0, level, 0, mSize);
+		System.arraycopy(mEventScale, 0, scale, 0, mSize);
+		System.arraycopy(mEventPlugged, 0, plugged, 0, mSize);
+		System.arraycopy(mEventStatus, 0, status, 0, mSize);
+		mEventTime = time;
+		mEventType = type;
+		mEventLevel = level;
+		mEventScale = scale;
+		mEventPlugged = plugged;
+		mEventStatus = status;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Intent;
+
+/**
+ * Replays a short recorded trace through the service and checks what it
+ * sees across a screen-off gap.
+ */
+public class TraceReplayTest extends TestCase {
+
+	private static final long MINUTE = 60 * 1000;
+	private static final long START = 1300000000000L;
+
+	private File mDir;
+
+	protected void setUp() throws IOException {
+		mDir = File.createTempFile("replay", "");
+		mDir.delete();
+		mDir.mkdir();
+	}
+
+	protected void tearDown() {
+		File[] files = mDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		mDir.delete();
+	}
+
+	public void testScreenOffGap() {
+		File trace = new File(mDir, TraceRecorder.FILE_NAME);
+		TraceRecorder recorder = new TraceRecorder(trace);
+		battery(recorder, 0, 80);
+		battery(recorder, 1, 79);
+		recorder.record(START + 2 * MINUTE, new Intent(Intent.ACTION_SCREEN_OFF));
+		battery(recorder, 10, 78); // nobody listens
+		battery(recorder, 20, 77);
+		recorder.record(START + 30 * MINUTE, new Intent(Intent.ACTION_SCREEN_ON));
+		battery(recorder, 31, 76);
+		recorder.close();
+
+		FakeContext context = new FakeContext(mDir);
+		AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
+		widgetManager.setAppWidgetIds(new int[] { 1 });
+		TraceReplay replay = new TraceReplay(context, trace);
+		replay.run(0);
+
+		assertEquals("battery events", 5, replay.batteryEvents);
+		assertEquals("dropped while screen off", 2, replay.dropped);
+		// the sticky one on screen on included
+		assertEquals("delivered", 4, replay.delivered);
+		assertEquals("gaps", 1, replay.gaps);
+		assertEquals("level changed across", 1, replay.changedGaps);
+		assertEquals("max jump", 2, replay.maxLevelJump);
+		assertTrue("widgets updated", widgetManager.getUpdateCount() + widgetManager.getPartialUpdateCount() > 0);
+	}
+
+	private static void battery(TraceRecorder recorder, int minute, int level) {
+		recorder.recordBattery(START + minute * MINUTE, level, 100, 0, BatterySource.STATUS_DISCHARGING, 2, 300,
+				3800);
+	}
+}
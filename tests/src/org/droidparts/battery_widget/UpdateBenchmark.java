@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Intent;
+import android.os.Looper;
+
+/**
+ * Micro benchmark of the widget update hot path on the JVM, against the
+ * framework stubs. Every operation is measured in several rounds after a
+ * warm-up, the median round is reported with throughput and bytes
+ * allocated per operation by the calling thread. Run with:
+ *
+ * <pre>
+ * ant -f tests/build.xml benchmark
+ * </pre>
+ *
+ * The framework side is a stub here: binder calls to the widget host and
+ * applying the views in the launcher are not part of the numbers, only the
+ * work done in the app process is.
+ */
+public class UpdateBenchmark {
+
+	private static final int ROUNDS = 5;
+	private static final int ITERATIONS = 1000000;
+	private static final int UPDATE_ITERATIONS = 100000;
+	private static final int WIDGETS = 3;
+
+	// keeps results alive so that work is not optimized away
+	private static int sSink;
+
+	private abstract static class Operation {
+		final String name;
+		final int iterations;
+
+		Operation(String name, int iterations) {
+			this.name = name;
+			this.iterations = iterations;
+		}
+
+		abstract void run(int i);
+	}
+
+	public static void main(String[] args) throws IOException {
+		Looper.prepareMainLooper();
+		File dir = File.createTempFile("benchmark", "");
+		dir.delete();
+		dir.mkdir();
+		final FakeContext context = new FakeContext(dir);
+		int[] appWidgetIds = new int[WIDGETS];
+		for (int i = 0; i < WIDGETS; i++) {
+			appWidgetIds[i] = i + 1;
+		}
+		AppWidgetManager.getInstance(context).setAppWidgetIds(appWidgetIds);
+
+		final Intent intent = new Intent(Intent.ACTION_BATTERY_CHANGED);
+		intent.putExtra("level", 57);
+		intent.putExtra("scale", 100);
+		intent.putExtra("plugged", 1);
+		final WidgetUpdateThread.Mailbox mailbox = WidgetUpdateThread.getInstance(context).createMailbox(
+				new ServiceMetrics());
+
+		Operation[] operations = new Operation[] {
+			new Operation("getIcon", ITERATIONS) {
+				void run(int i) {
+					sSink += IconTable.getIcon(i & 3, i % 101);
+				}
+			},
+			new Operation("getLevelText", ITERATIONS) {
+				void run(int i) {
+					sSink += RenderConfig.getLevelText(i % 101).length();
+				}
+			},
+			new Operation("parseIntent", ITERATIONS) {
+				void run(int i) {
+					int level = BatteryService.getChargeLevel(intent);
+					sSink += BatteryService.isChargerConnected(intent, level) ? level : -level;
+				}
+			},
+			new Operation("updateWidgets(full)", UPDATE_ITERATIONS) {
+				void run(int i) {
+					BatteryWidget.requestFullUpdate();
+					BatteryWidget.updateWidgets(context, i % 101, (i & 1) == 0, RemainingTimeEstimator.UNKNOWN);
+				}
+			},
+			new Operation("updateWidgets(partial)", UPDATE_ITERATIONS) {
+				void run(int i) {
+					BatteryWidget.updateWidgets(context, i % 101, true, RemainingTimeEstimator.UNKNOWN);
+				}
+			},
+			new Operation("post", ITERATIONS) {
+				void run(int i) {
+					// main thread part only, renders are merged on the update thread
+					mailbox.post(BatteryState.pack(i, i % 101, true, RemainingTimeEstimator.UNKNOWN));
+				}
+			},
+		};
+
+		System.out.println(WIDGETS + " widgets, " + ROUNDS + " rounds, median round");
+		for (Operation operation : operations) {
+			measure(operation);
+		}
+		if (sSink == 42) {
+			System.out.println();
+		}
+	}
+
+	private static void measure(Operation operation) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		int iterations = operation.iterations;
+
+		for (int i = 0; i < iterations; i++) {
+			operation.run(i);
+		}
+
+		long[] nanos = new long[ROUNDS];
+		long[] bytes = new long[ROUNDS];
+		for (int round = 0; round < ROUNDS; round++) {
+			long allocated = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				operation.run(i);
+			}
+			nanos[round] = System.nanoTime() - start;
+			bytes[round] = threads.getThreadAllocatedBytes(thread) - allocated;
+		}
+		Arrays.sort(nanos);
+		Arrays.sort(bytes);
+		long median = nanos[ROUNDS / 2];
+
+		System.out.println(String.format("%-24s %12d ops/s %10.1f ns/op %10.1f bytes/op", operation.name,
+				iterations * 1000000000L / Math.max(median, 1), (double) median / iterations,
+				(double) bytes[ROUNDS / 2] / iterations));
+	}
+}
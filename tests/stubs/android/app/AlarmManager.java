@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.app;
+
+/**
+ * Just enough of the framework class for the JVM tests, alarms never
+ * fire.
+ */
+public class AlarmManager {
+
+	public static final int ELAPSED_REALTIME = 3;
+
+	public static final long INTERVAL_FIFTEEN_MINUTES = 15 * 60 * 1000;
+
+	public void setInexactRepeating(int type, long triggerAtTime, long interval, PendingIntent operation) {
+	}
+
+	public void cancel(PendingIntent operation) {
+	}
+}
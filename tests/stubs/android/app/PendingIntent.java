@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Just enough of the framework class for the JVM tests.
+ */
+public final class PendingIntent {
+
+	public static final int FLAG_UPDATE_CURRENT = 1 << 27;
+
+	private final int mRequestCode;
+	private final Intent mIntent;
+
+	private PendingIntent(int requestCode, Intent intent) {
+		mRequestCode = requestCode;
+		mIntent = new Intent(intent);
+	}
+
+	public static PendingIntent getActivity(Context context, int requestCode, Intent intent, int flags) {
+		return new PendingIntent(requestCode, intent);
+	}
+
+	public static PendingIntent getBroadcast(Context context, int requestCode, Intent intent, int flags) {
+		return new PendingIntent(requestCode, intent);
+	}
+
+	/**
+	 * Not in the framework.
+	 */
+	public int getRequestCode() {
+		return mRequestCode;
+	}
+
+	/**
+	 * Not in the framework.
+	 */
+	public Intent getIntent() {
+		return mIntent;
+	}
+}
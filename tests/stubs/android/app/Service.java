@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.app;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.IBinder;
+
+/**
+ * Just enough of the framework class for the JVM tests.
+ */
+public abstract class Service extends ContextWrapper {
+
+	public Service() {
+		super(null);
+	}
+
+	/**
+	 * Not in the framework, where the system attaches the context.
+	 */
+	public final void attach(Context context) {
+		attachBaseContext(context);
+	}
+
+	public void onCreate() {
+	}
+
+	public void onStart(Intent intent, int startId) {
+	}
+
+	public void onDestroy() {
+	}
+
+	public abstract IBinder onBind(Intent intent);
+
+	protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.appwidget;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Bundle;
+import android.widget.RemoteViews;
+
+/**
+ * Just enough of the framework class for the JVM tests. Widget instances
+ * are set by the test, updates are counted and otherwise dropped.
+ */
+public class AppWidgetManager {
+
+	public static final String ACTION_APPWIDGET_UPDATE = "android.appwidget.action.APPWIDGET_UPDATE";
+	public static final String ACTION_APPWIDGET_DELETED = "android.appwidget.action.APPWIDGET_DELETED";
+	public static final String ACTION_APPWIDGET_ENABLED = "android.appwidget.action.APPWIDGET_ENABLED";
+	public static final String ACTION_APPWIDGET_DISABLED = "android.appwidget.action.APPWIDGET_DISABLED";
+
+	public static final String EXTRA_APPWIDGET_ID = "appWidgetId";
+
+	public static final int INVALID_APPWIDGET_ID = 0;
+
+	private static final AppWidgetManager sInstance = new AppWidgetManager();
+
+	private volatile int[] mAppWidgetIds = new int[0];
+
+	// update calls made, each one is a binder call on the device
+	private int mUpdates;
+	private int mPartialUpdates;
+	private RemoteViews mLastViews;
+
+	private AppWidgetManager() {
+	}
+
+	public static AppWidgetManager getInstance(Context context) {
+		return sInstance;
+	}
+
+	public int[] getAppWidgetIds(ComponentName provider) {
+		return mAppWidgetIds.clone();
+	}
+
+	public synchronized void updateAppWidget(int[] appWidgetIds, RemoteViews views) {
+		mUpdates++;
+		mLastViews = views;
+	}
+
+	public synchronized void partiallyUpdateAppWidget(int[] appWidgetIds, RemoteViews views) {
+		mPartialUpdates++;
+		mLastViews = views;
+	}
+
+	public Bundle getAppWidgetOptions(int appWidgetId) {
+		return new Bundle();
+	}
+
+	/**
+	 * Not in the framework.
+	 */
+	public void setAppWidgetIds(int[] appWidgetIds) {
+		mAppWidgetIds = appWidgetIds.clone();
+	}
+
+	/**
+	 * Returns number of full update calls. Not in the framework.
+	 */
+	public synchronized int getUpdateCount() {
+		return mUpdates;
+	}
+
+	/**
+	 * Returns number of partial update calls. Not in the framework.
+	 */
+	public synchronized int getPartialUpdateCount() {
+		return mPartialUpdates;
+	}
+
+	/**
+	 * Returns views of the last update call. Not in the framework.
+	 */
+	public synchronized RemoteViews getLastViews() {
+		return mLastViews;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.appwidget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+/**
+ * Just enough of the framework class for the JVM tests.
+ */
+public class AppWidgetProvider extends BroadcastReceiver {
+
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		String action = intent.getAction();
+		Bundle extras = intent.getExtras();
+		if (AppWidgetManager.ACTION_APPWIDGET_UPDATE.equals(action)) {
+			AppWidgetManager manager = AppWidgetManager.getInstance(context);
+			onUpdate(context, manager, manager.getAppWidgetIds(null));
+		} else if (AppWidgetManager.ACTION_APPWIDGET_DELETED.equals(action) && extras != null) {
+			onDeleted(context, new int[] { extras.getInt(AppWidgetManager.EXTRA_APPWIDGET_ID) });
+		} else if (AppWidgetManager.ACTION_APPWIDGET_ENABLED.equals(action)) {
+			onEnabled(context);
+		} else if (AppWidgetManager.ACTION_APPWIDGET_DISABLED.equals(action)) {
+			onDisabled(context);
+		}
+	}
+
+	public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+	}
+
+	public void onDeleted(Context context, int[] appWidgetIds) {
+	}
+
+	public void onEnabled(Context context) {
+	}
+
+	public void onDisabled(Context context) {
+	}
+}
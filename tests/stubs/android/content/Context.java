@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.content;
+
+import java.io.File;
+
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+
+/**
+ * Just enough of the framework class for the JVM tests.
+ */
+public abstract class Context {
+
+	public static final int MODE_PRIVATE = 0;
+
+	public static final String POWER_SERVICE = "power";
+	public static final String ALARM_SERVICE = "alarm";
+
+	public abstract String getPackageName();
+
+	public abstract Context getApplicationContext();
+
+	public abstract Resources getResources();
+
+	public abstract PackageManager getPackageManager();
+
+	public abstract File getFilesDir();
+
+	public abstract File getFileStreamPath(String name);
+
+	public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+	public abstract Object getSystemService(String name);
+
+	public abstract Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter);
+
+	public abstract void unregisterReceiver(BroadcastReceiver receiver);
+
+	public abstract ComponentName startService(Intent service);
+
+	public abstract boolean stopService(Intent service);
+
+	public abstract Context createPackageContext(String packageName, int flags)
+			throws PackageManager.NameNotFoundException;
+}
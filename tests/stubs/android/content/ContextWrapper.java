@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.content;
+
+import java.io.File;
+
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+
+/**
+ * Just enough of the framework class for the JVM tests.
+ */
+public class ContextWrapper extends Context {
+
+	private Context mBase;
+
+	public ContextWrapper(Context base) {
+		mBase = base;
+	}
+
+	protected void attachBaseContext(Context base) {
+		if (mBase != null) {
+			throw new IllegalStateException("Base context already set");
+		}
+		mBase = base;
+	}
+
+	public Context getBaseContext() {
+		return mBase;
+	}
+
+	@Override
+	public String getPackageName() {
+		return mBase.getPackageName();
+	}
+
+	@Override
+	public Context getApplicationContext() {
+		return mBase.getApplicationContext();
+	}
+
+	@Override
+	public Resources getResources() {
+		return mBase.getResources();
+	}
+
+	@Override
+	public PackageManager getPackageManager() {
+		return mBase.getPackageManager();
+	}
+
+	@Override
+	public File getFilesDir() {
+		return mBase.getFilesDir();
+	}
+
+	@Override
+	public File getFileStreamPath(String name) {
+		return mBase.getFileStreamPath(name);
+	}
+
+	@Override
+	public SharedPreferences getSharedPreferences(String name, int mode) {
+		return mBase.getSharedPreferences(name, mode);
+	}
+
+	@Override
+	public Object getSystemService(String name) {
+		return mBase.getSystemService(name);
+	}
+
+	@Override
+	public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+		return mBase.registerReceiver(receiver, filter);
+	}
+
+	@Override
+	public void unregisterReceiver(BroadcastReceiver receiver) {
+		mBase.unregisterReceiver(receiver);
+	}
+
+	@Override
+	public ComponentName startService(Intent service) {
+		return mBase.startService(service);
+	}
+
+	@Override
+	public boolean stopService(Intent service) {
+		return mBase.stopService(service);
+	}
+
+	@Override
+	public Context createPackageContext(String packageName, int flags)
+			throws PackageManager.NameNotFoundException {
+		return mBase.createPackageContext(packageName, flags);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.content;
+
+import android.os.Bundle;
+
+/**
+ * Just enough of the framework class for the JVM tests.
+ */
+public class Intent {
+
+	public static final String ACTION_VIEW = "android.intent.action.VIEW";
+	public static final String ACTION_BATTERY_CHANGED = "android.intent.action.BATTERY_CHANGED";
+	public static final String ACTION_SCREEN_ON = "android.intent.action.SCREEN_ON";
+	public static final String ACTION_SCREEN_OFF = "android.intent.action.SCREEN_OFF";
+
+	private String mAction;
+	private String mType;
+	private ComponentName mComponent;
+	private Bundle mExtras;
+
+	public Intent() {
+	}
+
+	public Intent(String action) {
+		mAction = action;
+	}
+
+	public Intent(Context packageContext, Class<?> cls) {
+		mComponent = new ComponentName(packageContext, cls);
+	}
+
+	public Intent(Intent o) {
+		mAction = o.mAction;
+		mType = o.mType;
+		mComponent = o.mComponent;
+		if (o.mExtras != null) {
+			mExtras = new Bundle(o.mExtras);
+		}
+	}
+
+	public String getAction() {
+		return mAction;
+	}
+
+	public Intent setAction(String action) {
+		mAction = action;
+		return this;
+	}
+
+	public String getType() {
+		return mType;
+	}
+
+	public Intent setType(String type) {
+		mType = type;
+		return this;
+	}
+
+	public ComponentName getComponent() {
+		return mComponent;
+	}
+
+	public Intent setClass(Context packageContext, Class<?> cls) {
+		mComponent = new ComponentName(packageContext, cls);
+		return this;
+	}
+
+	public Intent setClassName(String packageName, String className) {
+		mComponent = new ComponentName(packageName, className);
+		return this;
+	}
+
+	public Bundle getExtras() {
+		return mExtras != null ? new Bundle(mExtras) : null;
+	}
+
+	public boolean hasExtra(String name) {
+		return mExtras != null && mExtras.containsKey(name);
+	}
+
+	public int getIntExtra(String name, int defaultValue) {
+		return mExtras != null ? mExtras.getInt(name, defaultValue) : defaultValue;
+	}
+
+	public boolean getBooleanExtra(String name, boolean defaultValue) {
+		return mExtras != null ? mExtras.getBoolean(name, defaultValue) : defaultValue;
+	}
+
+	public String getStringExtra(String name) {
+		return mExtras != null ? mExtras.getString(name) : null;
+	}
+
+	public Intent putExtra(String name, int value) {
+		extras().putInt(name, value);
+		return this;
+	}
+
+	public Intent putExtra(String name, boolean value) {
+		extras().putBoolean(name, value);
+		return this;
+	}
+
+	public Intent putExtra(String name, String value) {
+		extras().putString(name, value);
+		return this;
+	}
+
+	private Bundle extras() {
+		if (mExtras == null) {
+			mExtras = new Bundle();
+		}
+		return mExtras;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.content;
+
+import java.util.Map;
+
+/**
+ * Just enough of the framework interface for the JVM tests.
+ */
+public interface SharedPreferences {
+
+	public interface Editor {
+		Editor putString(String key, String value);
+
+		Editor putInt(String key, int value);
+
+		Editor putBoolean(String key, boolean value);
+
+		Editor remove(String key);
+
+		boolean commit();
+	}
+
+	Map<String, ?> getAll();
+
+	Editor edit();
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.content.res;
+
+import android.util.DisplayMetrics;
+
+/**
+ * Just enough of the framework class for the JVM tests.
+ */
+public class Resources {
+
+	private final DisplayMetrics mMetrics = new DisplayMetrics();
+
+	public Resources() {
+		mMetrics.density = 1.5f;
+		mMetrics.densityDpi = 240;
+	}
+
+	public DisplayMetrics getDisplayMetrics() {
+		return mMetrics;
+	}
+}
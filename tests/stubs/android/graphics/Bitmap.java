@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Just enough of the framework class for the JVM tests, pixels are kept
+ * but nothing is drawn into them.
+ */
+public final class Bitmap {
+
+	public enum Config {
+		RGB_565(2), ARGB_8888(4);
+
+		final int bytesPerPixel;
+
+		Config(int bytesPerPixel) {
+			this.bytesPerPixel = bytesPerPixel;
+		}
+	}
+
+	private final int mWidth;
+	private final int mHeight;
+	private final Config mConfig;
+	private int[] mPixels;
+	private int mDensity;
+
+	private Bitmap(int width, int height, Config config) {
+		mWidth = width;
+		mHeight = height;
+		mConfig = config;
+		mPixels = new int[width * height];
+	}
+
+	public static Bitmap createBitmap(int width, int height, Config config) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("width and height must be > 0");
+		}
+		return new Bitmap(width, height, config);
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	public int getRowBytes() {
+		return mWidth * mConfig.bytesPerPixel;
+	}
+
+	public int getDensity() {
+		return mDensity;
+	}
+
+	public void setDensity(int density) {
+		mDensity = density;
+	}
+
+	public void eraseColor(int c) {
+		checkRecycled();
+		Arrays.fill(mPixels, c);
+	}
+
+	public boolean isRecycled() {
+		return mPixels == null;
+	}
+
+	public void recycle() {
+		mPixels = null;
+	}
+
+	private void checkRecycled() {
+		if (mPixels == null) {
+			throw new IllegalStateException("Can't call eraseColor() on a recycled bitmap");
+		}
+	}
+}
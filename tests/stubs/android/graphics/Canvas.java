@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.graphics;
+
+/**
+ * Just enough of the framework class for the JVM tests, drawing does
+ * nothing.
+ */
+public class Canvas {
+
+	private Bitmap mBitmap;
+
+	public Canvas() {
+	}
+
+	public Canvas(Bitmap bitmap) {
+		mBitmap = bitmap;
+	}
+
+	public void setBitmap(Bitmap bitmap) {
+		mBitmap = bitmap;
+	}
+
+	public void drawPath(Path path, Paint paint) {
+	}
+
+	public void drawRect(RectF rect, Paint paint) {
+	}
+
+	public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+	}
+
+	public void drawText(String text, float x, float y, Paint paint) {
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.graphics;
+
+/**
+ * Just enough of the framework class for the JVM tests, text metrics are
+ * made up from the text size.
+ */
+public class Paint {
+
+	public static final int ANTI_ALIAS_FLAG = 1;
+
+	public enum Align {
+		LEFT, CENTER, RIGHT
+	}
+
+	public enum Style {
+		FILL, STROKE, FILL_AND_STROKE
+	}
+
+	private float mTextSize = 12;
+
+	public Paint() {
+	}
+
+	public Paint(int flags) {
+	}
+
+	public void setColor(int color) {
+	}
+
+	public void setStyle(Style style) {
+	}
+
+	public void setStrokeWidth(float width) {
+	}
+
+	public void setTextAlign(Align align) {
+	}
+
+	public void setTextSize(float textSize) {
+		mTextSize = textSize;
+	}
+
+	public void setFakeBoldText(boolean fakeBoldText) {
+	}
+
+	public void setShadowLayer(float radius, float dx, float dy, int color) {
+	}
+
+	public void clearShadowLayer() {
+	}
+
+	public float ascent() {
+		return -0.9f * mTextSize;
+	}
+
+	public float descent() {
+		return 0.25f * mTextSize;
+	}
+}
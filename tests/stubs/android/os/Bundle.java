@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.os;
+
+import java.util.HashMap;
+
+/**
+ * Just enough of the framework class for the JVM tests.
+ */
+public final class Bundle {
+
+	private final HashMap<String, Object> mMap = new HashMap<String, Object>();
+
+	public Bundle() {
+	}
+
+	public Bundle(Bundle b) {
+		mMap.putAll(b.mMap);
+	}
+
+	public boolean containsKey(String key) {
+		return mMap.containsKey(key);
+	}
+
+	public Object get(String key) {
+		return mMap.get(key);
+	}
+
+	public void putInt(String key, int value) {
+		mMap.put(key, Integer.valueOf(value));
+	}
+
+	public void putBoolean(String key, boolean value) {
+		mMap.put(key, Boolean.valueOf(value));
+	}
+
+	public void putString(String key, String value) {
+		mMap.put(key, value);
+	}
+
+	public int getInt(String key) {
+		return getInt(key, 0);
+	}
+
+	public int getInt(String key, int defaultValue) {
+		Object value = mMap.get(key);
+		return value instanceof Integer ? (Integer) value : defaultValue;
+	}
+
+	public boolean getBoolean(String key) {
+		return getBoolean(key, false);
+	}
+
+	public boolean getBoolean(String key, boolean defaultValue) {
+		Object value = mMap.get(key);
+		return value instanceof Boolean ? (Boolean) value : defaultValue;
+	}
+
+	public String getString(String key) {
+		Object value = mMap.get(key);
+		return value instanceof String ? (String) value : null;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.os;
+
+/**
+ * Just enough of the framework class for the JVM tests. Callbacks are
+ * queued in virtual time and run by {@link Looper#loopUntil(long)}.
+ */
+public class Handler {
+
+	private final Looper mLooper;
+
+	public Handler() {
+		// the framework throws without a looper, tests need not prepare one
+		Looper looper = Looper.myLooper();
+		mLooper = looper != null ? looper : Looper.getMainLooper();
+	}
+
+	public Handler(Looper looper) {
+		mLooper = looper;
+	}
+
+	public final Looper getLooper() {
+		return mLooper;
+	}
+
+	public final boolean post(Runnable r) {
+		return postAtTime(r, SystemClock.uptimeMillis());
+	}
+
+	public final boolean postDelayed(Runnable r, long delayMillis) {
+		return postAtTime(r, SystemClock.uptimeMillis() + Math.max(delayMillis, 0));
+	}
+
+	public final boolean postAtTime(Runnable r, long uptimeMillis) {
+		Looper.enqueue(mLooper, this, r, uptimeMillis);
+		return true;
+	}
+
+	public final void removeCallbacks(Runnable r) {
+		Looper.remove(this, r);
+	}
+}
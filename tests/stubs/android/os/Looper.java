@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.os;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Just enough of the framework class for the JVM tests. Messages of all
+ * loopers go to one queue in virtual time, nothing runs until the test
+ * calls {@link #loopUntil(long)} and then everything runs on the calling
+ * thread. A test may also call {@link #prepareMainLooper()} to make its
+ * own thread the main thread.
+ */
+public final class Looper {
+
+	static final class Message implements Comparable<Message> {
+		final Looper looper;
+		final Handler handler;
+		final Runnable callback;
+		final long when;
+		final long seq;
+
+		Message(Looper looper, Handler handler, Runnable callback, long when, long seq) {
+			this.looper = looper;
+			this.handler = handler;
+			this.callback = callback;
+			this.when = when;
+			this.seq = seq;
+		}
+
+		public int compareTo(Message other) {
+			if (when != other.when) {
+				return when < other.when ? -1 : 1;
+			}
+			return seq < other.seq ? -1 : seq == other.seq ? 0 : 1;
+		}
+	}
+
+	private static final Looper sMainLooper = new Looper();
+	private static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<Looper>();
+
+	// guarded by sQueue
+	private static final PriorityQueue<Message> sQueue = new PriorityQueue<Message>();
+	private static long sSeq;
+
+	Looper() {
+	}
+
+	public static Looper getMainLooper() {
+		return sMainLooper;
+	}
+
+	public static Looper myLooper() {
+		return sThreadLocal.get();
+	}
+
+	public static void prepareMainLooper() {
+		sThreadLocal.set(sMainLooper);
+	}
+
+	/**
+	 * Runs all messages due until given virtual time in order, including
+	 * the ones they post meanwhile, and leaves the clock at that time. Each
+	 * message runs with its looper as the current one. Not in the framework.
+	 */
+	public static void loopUntil(long uptime) {
+		Looper previous = sThreadLocal.get();
+		try {
+			while (true) {
+				Message message;
+				synchronized (sQueue) {
+					message = sQueue.peek();
+					if (message == null || message.when > uptime) {
+						break;
+					}
+					sQueue.poll();
+				}
+				SystemClock.advanceTo(message.when);
+				sThreadLocal.set(message.looper);
+				message.callback.run();
+			}
+		} finally {
+			sThreadLocal.set(previous);
+		}
+		SystemClock.advanceTo(uptime);
+	}
+
+	/**
+	 * Returns virtual time of the next message, or -1 if there is none. Not
+	 * in the framework.
+	 */
+	public static long nextMessageTime() {
+		synchronized (sQueue) {
+			Message message = sQueue.peek();
+			return message != null ? message.when : -1;
+		}
+	}
+
+	static void enqueue(Looper looper, Handler handler, Runnable callback, long when) {
+		synchronized (sQueue) {
+			sQueue.add(new Message(looper, handler, callback, when, sSeq++));
+		}
+	}
+
+	static void remove(Handler handler, Runnable callback) {
+		synchronized (sQueue) {
+			Iterator<Message> it = sQueue.iterator();
+			while (it.hasNext()) {
+				Message message = it.next();
+				if (message.handler == handler && (callback == null || message.callback == callback)) {
+					it.remove();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.widget;
+
+import java.util.ArrayList;
+
+import android.app.PendingIntent;
+import android.graphics.Bitmap;
+
+/**
+ * Just enough of the framework class for the JVM tests. Keeps one action
+ * per setter call, the way the framework class does.
+ */
+public class RemoteViews {
+
+	/**
+	 * Not in the framework.
+	 */
+	public static final class Action {
+		public final String method;
+		public final int viewId;
+		public final Object value;
+
+		Action(String method, int viewId, Object value) {
+			this.method = method;
+			this.viewId = viewId;
+			this.value = value;
+		}
+	}
+
+	private final String mPackage;
+	private final int mLayoutId;
+	private final ArrayList<Action> mActions = new ArrayList<Action>();
+
+	public RemoteViews(String packageName, int layoutId) {
+		mPackage = packageName;
+		mLayoutId = layoutId;
+	}
+
+	public String getPackage() {
+		return mPackage;
+	}
+
+	public int getLayoutId() {
+		return mLayoutId;
+	}
+
+	public void setImageViewResource(int viewId, int srcId) {
+		mActions.add(new Action("setImageResource", viewId, Integer.valueOf(srcId)));
+	}
+
+	public void setImageViewBitmap(int viewId, Bitmap bitmap) {
+		mActions.add(new Action("setImageBitmap", viewId, bitmap));
+	}
+
+	public void setTextViewText(int viewId, CharSequence text) {
+		mActions.add(new Action("setText", viewId, text));
+	}
+
+	public void setViewVisibility(int viewId, int visibility) {
+		mActions.add(new Action("setVisibility", viewId, Integer.valueOf(visibility)));
+	}
+
+	public void setOnClickPendingIntent(int viewId, PendingIntent pendingIntent) {
+		mActions.add(new Action("setOnClickPendingIntent", viewId, pendingIntent));
+	}
+
+	/**
+	 * Returns actions in the order they were added. Not in the framework.
+	 */
+	public ArrayList<Action> getActions() {
+		return mActions;
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2010 Sergej Shafarenka, beworx.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.droidparts.battery_widget;
+
+/**
+ * Stands in for the class generated by aapt, for the classes under test
+ * referring to resources. Values are arbitrary but distinct.
+ */
+public final class R {
+
+	public static final class layout {
+		public static final int battery_widget = 0x7f030001;
+	}
+
+	public static final class id {
+		public static final int battery = 0x7f050001;
+		public static final int capacity_center = 0x7f050002;
+		public static final int capacity_right_bottom = 0x7f050003;
+		public static final int lightning = 0x7f050004;
+		public static final int remaining = 0x7f050005;
+	}
+
+	public static final class drawable {
+		public static final int ic_1_1 = 0x7f020001;
+		public static final int ic_1_2 = 0x7f020002;
+		public static final int ic_1_3 = 0x7f020003;
+		public static final int ic_1_4_1 = 0x7f020004;
+		public static final int ic_1_4_2 = 0x7f020005;
+		public static final int ic_1_5_1 = 0x7f020006;
+		public static final int ic_1_5_2 = 0x7f020007;
+		public static final int ic_1_6 = 0x7f020008;
+		public static final int ic_2_1 = 0x7f020009;
+		public static final int ic_2_2 = 0x7f02000a;
+		public static final int ic_2_3 = 0x7f02000b;
+		public static final int ic_2_4_1 = 0x7f02000c;
+		public static final int ic_2_4_2 = 0x7f02000d;
+		public static final int ic_2_5_1 = 0x7f02000e;
+		public static final int ic_2_5_2 = 0x7f02000f;
+		public static final int ic_3_1 = 0x7f020010;
+		public static final int ic_3_2 = 0x7f020011;
+		public static final int ic_3_3 = 0x7f020012;
+		public static final int ic_3_4_1 = 0x7f020013;
+	}
+}